@@ -0,0 +1,43 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils;
+
+import java.io.IOException;
+
+import org.bson.types.Binary;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Writes {@link org.bson.types.Binary} values of decoded documents as plain binary data, so they can be read into
+ * {@code byte[]} and {@link io.seventyone.mongoutils.annotations.MongoPackedArray} properties.
+ */
+class BinarySerializer extends StdSerializer<Binary> {
+
+    private static final long serialVersionUID = 1L;
+
+    BinarySerializer() {
+        super(Binary.class);
+    }
+
+    @Override
+    public void serialize(Binary value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeBinary(value.getData());
+    }
+
+}
@@ -0,0 +1,244 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils;
+
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+
+/**
+ * Thread-safe Bloom filter over the values of a unique index.
+ * <p>
+ * {@link #mightContain(Object)} returning false is a definite miss, true might be a false positive. Numbers are
+ * compared like MongoDB does, e.g. 1, 1L and 1.0 are the same value, binaries by content.
+ */
+public class BloomFilter {
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private final AtomicLongArray    words;
+    private final long               bits;
+    private final int                hashes;
+    private final LongAdder          insertions = new LongAdder();
+    private final BloomFilterMetrics metrics;
+    private volatile boolean         loaded;
+
+    /**
+     * Creates a Bloom filter.
+     *
+     * @param bits the size of the filter in bits, rounded up to a multiple of 64
+     * @param expectedInsertions the expected number of values, used to choose the number of hash functions
+     */
+    public BloomFilter(long bits, long expectedInsertions) {
+
+        if (bits < 64 || bits > 64L * Integer.MAX_VALUE) {
+            String msg = String.format("Bloom filter size can't be '%d' bits, must be in the range 64-%d", bits,
+                64L * Integer.MAX_VALUE);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int wordCount = (int) ((bits + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bits = wordCount * 64L;
+
+        long expected = Math.max(1L, expectedInsertions);
+        int optimal = (int) Math.round((double) this.bits / expected * Math.log(2));
+        this.hashes = Math.max(1, Math.min(16, optimal));
+
+        this.metrics = new BloomFilterMetrics(this);
+    }
+
+    /**
+     * Adds a value, unsupported values are ignored, see {@link #isSupported(Object)}.
+     */
+    public void put(Object value) {
+
+        String canonical = canonical(value);
+        if (canonical == null) {
+            return;
+        }
+
+        long hash1 = hash(canonical);
+        long hash2 = mix(hash1 ^ SEED);
+
+        for (int i = 0; i < this.hashes; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, this.bits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current;
+            do {
+                current = this.words.get(word);
+            }
+            while ((current & mask) == 0 && this.words.compareAndSet(word, current, current | mask) == false);
+        }
+
+        this.insertions.increment();
+    }
+
+    /**
+     * Checks if a value might have been added, false means it was definitely not added. Always true for unsupported
+     * values.
+     */
+    public boolean mightContain(Object value) {
+
+        String canonical = canonical(value);
+        if (canonical == null) {
+            return true;
+        }
+
+        long hash1 = hash(canonical);
+        long hash2 = mix(hash1 ^ SEED);
+
+        for (int i = 0; i < this.hashes; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, this.bits);
+            if ((this.words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Marks the filter as loaded, i.e. all existing values were added.
+     */
+    void markLoaded() {
+        this.loaded = true;
+    }
+
+    /**
+     * Checks if all existing values were added, a filter that's still loading can't answer definite misses.
+     */
+    public boolean isLoaded() {
+        return this.loaded;
+    }
+
+    /**
+     * Returns the metrics of this filter.
+     */
+    public BloomFilterMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the expected false-positive rate based on the number of added values.
+     */
+    public double getExpectedFalsePositiveRate() {
+        double fill = 1.0 - Math.exp(-(double) this.hashes * this.insertions.sum() / this.bits);
+        return Math.pow(fill, this.hashes);
+    }
+
+    /**
+     * Returns the size of the filter in bits.
+     */
+    public long getBits() {
+        return this.bits;
+    }
+
+    /**
+     * Returns the number of hash functions.
+     */
+    public int getHashes() {
+        return this.hashes;
+    }
+
+    /**
+     * Returns the number of added values, duplicates included.
+     */
+    public long getInsertions() {
+        return this.insertions.sum();
+    }
+
+    /**
+     * Checks if a value can be added and probed, i.e. it's compared by MongoDB the way the filter compares it.
+     * <p>
+     * Supported are numbers, strings, booleans, dates, ObjectIds and binaries. Other values, e.g. null, which also
+     * matches missing fields, arrays or embedded documents, have to be queried.
+     */
+    public static boolean isSupported(Object value) {
+        return canonical(value) != null;
+    }
+
+    private static String canonical(Object value) {
+
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return "n:" + ((Number) value).longValue();
+        }
+
+        if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (number == Math.rint(number) && Double.isInfinite(number) == false && Math.abs(number) < 0x1p63) {
+                return "n:" + (long) number;
+            }
+            return "d:" + number;
+        }
+
+        if (value instanceof String) {
+            return "s:" + value;
+        }
+
+        if (value instanceof Boolean) {
+            return "b:" + value;
+        }
+
+        if (value instanceof Date) {
+            return "t:" + ((Date) value).getTime();
+        }
+
+        if (value instanceof ObjectId) {
+            return "o:" + ((ObjectId) value).toHexString();
+        }
+
+        // byte[] is stored as binary of the generic subtype 0
+        if (value instanceof byte[]) {
+            return "x:0:" + Base64.getEncoder().encodeToString((byte[]) value);
+        }
+
+        if (value instanceof Binary) {
+            Binary binary = (Binary) value;
+            return "x:" + binary.getType() + ":" + Base64.getEncoder().encodeToString(binary.getData());
+        }
+
+        return null;
+    }
+
+    private static long hash(String value) {
+
+        // FNV-1a over the chars, finished with a 64-bit mix for better bit distribution
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
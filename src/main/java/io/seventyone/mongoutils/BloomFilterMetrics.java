@@ -0,0 +1,89 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a {@link io.seventyone.mongoutils.BloomFilter} used for existence checks.
+ */
+public class BloomFilterMetrics {
+
+    private final BloomFilter filter;
+    private final LongAdder   probes         = new LongAdder();
+    private final LongAdder   misses         = new LongAdder();
+    private final LongAdder   falsePositives = new LongAdder();
+
+    BloomFilterMetrics(BloomFilter filter) {
+        this.filter = filter;
+    }
+
+    void recordProbe() {
+        this.probes.increment();
+    }
+
+    void recordMiss() {
+        this.misses.increment();
+    }
+
+    void recordFalsePositive() {
+        this.falsePositives.increment();
+    }
+
+    /**
+     * Number of existence checks.
+     */
+    public long getProbes() {
+        return this.probes.sum();
+    }
+
+    /**
+     * Number of existence checks answered by the filter without a query.
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Number of existence checks the filter passed on that found no document.
+     */
+    public long getFalsePositives() {
+        return this.falsePositives.sum();
+    }
+
+    /**
+     * Observed false-positive rate of the checks for absent values, 0.0 if there were none yet.
+     */
+    public double getFalsePositiveRate() {
+        long falsePositives = getFalsePositives();
+        long negatives = falsePositives + getMisses();
+        return negatives == 0 ? 0.0 : (double) falsePositives / negatives;
+    }
+
+    /**
+     * Expected false-positive rate based on filter size and number of added values.
+     */
+    public double getExpectedFalsePositiveRate() {
+        return this.filter.getExpectedFalsePositiveRate();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BloomFilterMetrics[probes=%d, misses=%d, falsePositives=%d, expectedRate=%.6f]",
+            getProbes(), getMisses(), getFalsePositives(), getExpectedFalsePositiveRate());
+    }
+
+}
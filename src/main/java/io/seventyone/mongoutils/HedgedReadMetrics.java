@@ -0,0 +1,84 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a {@link io.seventyone.mongoutils.HedgedReader}.
+ */
+public class HedgedReadMetrics {
+
+    private final LongAdder reads  = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder wins   = new LongAdder();
+
+    void recordRead() {
+        this.reads.increment();
+    }
+
+    void recordHedge() {
+        this.hedged.increment();
+    }
+
+    void recordWin() {
+        this.wins.increment();
+    }
+
+    /**
+     * Number of reads executed by the hedged reader.
+     */
+    public long getReads() {
+        return this.reads.sum();
+    }
+
+    /**
+     * Number of reads that sent a second, hedging request.
+     */
+    public long getHedgedReads() {
+        return this.hedged.sum();
+    }
+
+    /**
+     * Number of hedging requests that returned before the original request.
+     */
+    public long getHedgeWins() {
+        return this.wins.sum();
+    }
+
+    /**
+     * Fraction of reads that were hedged, 0.0 if nothing was read yet.
+     */
+    public double getHedgeRate() {
+        long reads = getReads();
+        return reads == 0 ? 0.0 : (double) getHedgedReads() / reads;
+    }
+
+    /**
+     * Fraction of hedged reads that were won by the hedging request, 0.0 if nothing was hedged yet.
+     */
+    public double getHedgeWinRate() {
+        long hedged = getHedgedReads();
+        return hedged == 0 ? 0.0 : (double) getHedgeWins() / hedged;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HedgedReadMetrics[reads=%d, hedged=%d, wins=%d]", getReads(), getHedgedReads(),
+            getHedgeWins());
+    }
+
+}
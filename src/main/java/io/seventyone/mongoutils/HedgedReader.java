@@ -0,0 +1,299 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.google.common.collect.Lists;
+import com.mongodb.MongoException;
+import com.mongodb.MongoInterruptedException;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+
+/**
+ * Executes idempotent finds with a second, hedging request to another replica-set member if the first one is slow.
+ * <p>
+ * The original request uses the primary read preference, the hedging request is sent after the hedge delay with the
+ * hedge read preference. The first successful result is returned, the cursor of the other request is closed.
+ * <p>
+ * The hedge delay is the fixed delay or, if a percentile is set and enough reads were observed, the latency of that
+ * percentile. The fixed delay is used as lower bound in that case.
+ * <p>
+ * Closing the cursor of the losing request only stops its later {@code getMore}s. A query still computing its first
+ * batch keeps running on the server and holds a pool thread and a connection until it's done, so set a max time to
+ * bound it.
+ */
+public class HedgedReader implements AutoCloseable {
+
+    private static final int LATENCY_SAMPLES   = 1024;
+    private static final int MIN_SAMPLES       = 100;
+    private static final int RECALCULATE_EVERY = 64;
+
+    private final long              delayMillis;
+    private final double            percentile;
+    private final long              maxTimeMillis;
+    private final ReadPreference    readPreference;
+    private final ReadPreference    hedgeReadPreference;
+    private final ExecutorService   executor;
+    private final HedgedReadMetrics metrics = new HedgedReadMetrics();
+
+    private final long[]  latencies = new long[LATENCY_SAMPLES];
+    private int           latencyCount;
+    private int           latencyIndex;
+    private volatile long percentileDelayMillis = -1L;
+
+    /**
+     * Creates a hedged reader.
+     *
+     * @param delayMillis the fixed hedge delay, positive
+     * @param percentile the latency percentile used as hedge delay, e.g. 0.95, or 0.0 to use the fixed delay only
+     * @param readPreference the read preference of the original request
+     * @param hedgeReadPreference the read preference of the hedging request
+     */
+    public HedgedReader(long delayMillis, double percentile, ReadPreference readPreference,
+                        ReadPreference hedgeReadPreference) {
+        this(delayMillis, percentile, 0L, readPreference, hedgeReadPreference);
+    }
+
+    /**
+     * Creates a hedged reader whose requests are aborted by the server after a max time.
+     *
+     * @param delayMillis the fixed hedge delay, positive
+     * @param percentile the latency percentile used as hedge delay, e.g. 0.95, or 0.0 to use the fixed delay only
+     * @param maxTimeMillis the max time of each request, 0 for no limit
+     * @param readPreference the read preference of the original request
+     * @param hedgeReadPreference the read preference of the hedging request
+     */
+    public HedgedReader(long delayMillis, double percentile, long maxTimeMillis, ReadPreference readPreference,
+                        ReadPreference hedgeReadPreference) {
+
+        // A zero delay would hedge every read, doubling the load
+        if (delayMillis < 1) {
+            String msg = String.format("Hedge delay can't be '%d', must be positive", delayMillis);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (percentile < 0.0 || percentile >= 1.0) {
+            String msg = String.format("Hedge percentile can't be '%s', must be in the range 0.0-1.0", percentile);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (maxTimeMillis < 0) {
+            String msg = String.format("Hedge max time can't be '%d', must not be negative", maxTimeMillis);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (readPreference == null || hedgeReadPreference == null) {
+            throw new IllegalArgumentException("Read preferences can't be null");
+        }
+
+        this.delayMillis = delayMillis;
+        this.percentile = percentile;
+        this.maxTimeMillis = maxTimeMillis;
+        this.readPreference = readPreference;
+        this.hedgeReadPreference = hedgeReadPreference;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mongo-utils-hedged-read-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Finds all documents matching the filter, hedging the request if it's slower than the hedge delay.
+     * <p>
+     * Only use this for idempotent reads, both requests might be executed completely.
+     */
+    public List<Document> find(MongoCollection<Document> collection, Bson filter) {
+
+        this.metrics.recordRead();
+        long start = System.nanoTime();
+
+        ExecutorCompletionService<List<Document>> completion = new ExecutorCompletionService<>(this.executor);
+
+        FindAttempt original = new FindAttempt(find(collection, this.readPreference, filter));
+        FindAttempt hedge = null;
+        Future<List<Document>> hedgeFuture = null;
+
+        completion.submit(original);
+        int pending = 1;
+
+        Throwable failure = null;
+        try {
+            Future<List<Document>> done = completion.poll(getHedgeDelayMillis(), TimeUnit.MILLISECONDS);
+            if (done == null) {
+                this.metrics.recordHedge();
+                hedge = new FindAttempt(find(collection, this.hedgeReadPreference, filter));
+                hedgeFuture = completion.submit(hedge);
+                pending++;
+            }
+
+            while (pending > 0) {
+                if (done == null) {
+                    done = completion.take();
+                }
+                pending--;
+
+                try {
+                    List<Document> documents = done.get();
+                    if (done == hedgeFuture) {
+                        this.metrics.recordWin();
+                    }
+                    recordLatency(System.nanoTime() - start);
+                    return documents;
+                }
+                catch (ExecutionException e) {
+                    failure = e.getCause();
+                    done = null;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoInterruptedException("Interrupted while waiting for hedged read", e);
+        }
+        finally {
+            original.cancel();
+            if (hedge != null) {
+                hedge.cancel();
+            }
+        }
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        throw new MongoException("Hedged read failed", failure);
+    }
+
+    private FindIterable<Document> find(MongoCollection<Document> collection, ReadPreference readPreference,
+                                        Bson filter) {
+
+        FindIterable<Document> iterable = collection.withReadPreference(readPreference).find(filter);
+        if (this.maxTimeMillis > 0) {
+            iterable.maxTime(this.maxTimeMillis, TimeUnit.MILLISECONDS);
+        }
+
+        return iterable;
+    }
+
+    /**
+     * Returns the hedged read metrics.
+     */
+    public HedgedReadMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the currently used hedge delay in milliseconds.
+     */
+    public long getHedgeDelayMillis() {
+        return Math.max(this.delayMillis, this.percentileDelayMillis);
+    }
+
+    private synchronized void recordLatency(long nanos) {
+
+        this.latencies[this.latencyIndex] = TimeUnit.NANOSECONDS.toMillis(nanos);
+        this.latencyIndex = (this.latencyIndex + 1) % LATENCY_SAMPLES;
+        if (this.latencyCount < LATENCY_SAMPLES) {
+            this.latencyCount++;
+        }
+
+        if (this.percentile > 0.0 && this.latencyCount >= MIN_SAMPLES && this.latencyIndex % RECALCULATE_EVERY == 0) {
+            long[] sorted = Arrays.copyOf(this.latencies, this.latencyCount);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(this.percentile * this.latencyCount) - 1;
+            this.percentileDelayMillis = sorted[Math.max(0, Math.min(rank, this.latencyCount - 1))];
+        }
+    }
+
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * A single find request whose cursor can be closed from another thread.
+     */
+    private static class FindAttempt implements Callable<List<Document>> {
+
+        private final FindIterable<Document>   iterable;
+        private final AtomicBoolean            cancelled = new AtomicBoolean();
+        private volatile MongoCursor<Document> cursor;
+
+        FindAttempt(FindIterable<Document> iterable) {
+            this.iterable = iterable;
+        }
+
+        @Override
+        public List<Document> call() {
+
+            MongoCursor<Document> cursor = this.iterable.iterator();
+            this.cursor = cursor;
+
+            List<Document> documents = Lists.newArrayList();
+            try {
+                while (this.cancelled.get() == false && cursor.hasNext()) {
+                    documents.add(cursor.next());
+                }
+            }
+            finally {
+                close();
+            }
+
+            if (this.cancelled.get()) {
+                throw new CancellationException();
+            }
+
+            return documents;
+        }
+
+        void cancel() {
+            this.cancelled.set(true);
+            close();
+        }
+
+        private void close() {
+            MongoCursor<Document> cursor = this.cursor;
+            if (cursor != null) {
+                synchronized (this) {
+                    if (this.cursor != null) {
+                        this.cursor = null;
+                        cursor.close();
+                    }
+                }
+            }
+        }
+    }
+
+}
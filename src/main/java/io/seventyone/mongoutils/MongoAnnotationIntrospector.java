@@ -0,0 +1,47 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils;
+
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.NopAnnotationIntrospector;
+
+import io.seventyone.mongoutils.annotations.MongoPackedArray;
+
+/**
+ * Provides the (de)serializers for the mongo-utils annotations, used in addition to the introspector of the
+ * configured {@link com.fasterxml.jackson.databind.ObjectMapper}.
+ */
+class MongoAnnotationIntrospector extends NopAnnotationIntrospector {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Object findSerializer(Annotated annotated) {
+        if (annotated.hasAnnotation(MongoPackedArray.class)) {
+            return PackedArraySerializer.class;
+        }
+        return null;
+    }
+
+    @Override
+    public Object findDeserializer(Annotated annotated) {
+        if (annotated.hasAnnotation(MongoPackedArray.class)) {
+            return PackedArrayDeserializer.class;
+        }
+        return null;
+    }
+
+}
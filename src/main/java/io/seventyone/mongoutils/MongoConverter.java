@@ -25,16 +25,26 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.mongodb.client.MongoIterable;
 
+import io.seventyone.mongoutils.migration.MongoUpcaster;
+import io.seventyone.mongoutils.migration.UpcastListener;
+
 
 /**
  * Converts objects to MongoDB-compatible documents and vice versa.
  */
 public interface MongoConverter {
 
+    /**
+     * Document field name of the schema version of entities with
+     * {@link io.seventyone.mongoutils.annotations.MongoCollection#schemaVersion()}.
+     */
+    static final String SCHEMA_VERSION_KEY = "_schemaVersion";
+
     /**
      * Provide the converter with an existing {@link com.fasterxml.jackson.databind.ObjectMapper}.
      * <p>
-     * This will reset the currently used objectMapper.
+     * This will reset the currently used objectMapper. A copy of the objectMapper is used, so the MongoDB specific
+     * serializers aren't registered with it and later changes to it don't affect the converter.
      * <p>
      * If you don't provide an objectMapper a senseful default will created:
      * <li>SerializationFeature.WRITE_DATES_AS_TIMESTAMPS = false
@@ -66,6 +76,9 @@ public interface MongoConverter {
 
     /**
      * Converts a {@link org.bson.Document} to an entity.
+     * <p>
+     * Documents older than the {@link io.seventyone.mongoutils.annotations.MongoCollection#schemaVersion()} of the
+     * entity class are upgraded by its upcasters first.
      */
     <T> T entityFrom(Document document, Class<T> entityClass);
 
@@ -81,6 +94,8 @@ public interface MongoConverter {
 
     /**
      * Converts an entity to a {@link org.bson.Document}.
+     * <p>
+     * Includes the {@link io.seventyone.mongoutils.annotations.MongoCollection#schemaVersion()} of the entity class.
      */
     Document documentFrom(Object object);
 
@@ -89,4 +104,32 @@ public interface MongoConverter {
      */
     List<Document> documentsForm(List<Object> objects);
 
+    /**
+     * Builds and caches the readers and writers of an entity class.
+     * <p>
+     * Optionally runs synthetic conversions of a default-constructed instance, if the class has a default constructor.
+     */
+    void warmUp(Class<?> entityClass, int conversions);
+
+    /**
+     * Registers an upcaster for an entity class in addition to the ones declared in its
+     * {@link io.seventyone.mongoutils.annotations.MongoCollection} annotation.
+     */
+    void registerUpcaster(Class<?> entityClass, MongoUpcaster upcaster);
+
+    /**
+     * Upgrades a document to the current schema version of an entity class without notifying the listeners.
+     *
+     * @param document the document, it isn't modified
+     * @param entityClass the entity class
+     * @return a copy of the upgraded document including the current schema version, or null if it's current already
+     */
+    Document upcast(Document document, Class<?> entityClass);
+
+    /**
+     * Adds a listener that gets notified about upgraded documents, e.g. a
+     * {@link io.seventyone.mongoutils.migration.MigrationWriter}.
+     */
+    void addUpcastListener(UpcastListener listener);
+
 }
\ No newline at end of file
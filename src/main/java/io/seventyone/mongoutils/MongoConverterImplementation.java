@@ -15,26 +15,47 @@
  */
 package io.seventyone.mongoutils;
 
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.bson.Document;
+import org.bson.types.Binary;
 
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.google.common.collect.Lists;
 import com.mongodb.client.MongoIterable;
 
+import io.seventyone.mongoutils.migration.MongoUpcaster;
+import io.seventyone.mongoutils.migration.UpcastListener;
+
 public class MongoConverterImplementation implements MongoConverter {
 
-    private ObjectMapper objectMapper;
+    private static final MongoUpcaster[] NO_UPCASTERS = new MongoUpcaster[0];
+
+    private ObjectMapper                             objectMapper;
+    private final Map<Class<?>, List<MongoUpcaster>> registeredUpcasters = new ConcurrentHashMap<>();
+    private final Map<Class<?>, MongoUpcaster[]>     upcasterChains      = new ConcurrentHashMap<>();
+    private final List<UpcastListener>               upcastListeners     = new CopyOnWriteArrayList<>();
 
     @Override
     public void provideObjectMapper(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+        // A copy is used, the provided mapper might be shared with other parts of the application
+        this.objectMapper = objectMapper == null ? null : objectMapper.copy();
+        if (this.objectMapper != null) {
+            registerMongoSupport(this.objectMapper);
+        }
     }
 
     @Override
@@ -59,9 +80,15 @@ public class MongoConverterImplementation implements MongoConverter {
             return null;
         }
 
+        Document source = document;
+        MongoUpcaster[] chain = this.upcasterChains.computeIfAbsent(entityClass, this::compileUpcasterChain);
+        if (chain != NO_UPCASTERS) {
+            source = upcastAndNotify(document, entityClass);
+        }
+
         T entity = null;
         try {
-            entity = getObjectMapper().convertValue(document, entityClass);
+            entity = getObjectMapper().convertValue(source, entityClass);
         }
         catch (IllegalArgumentException e) {
             e.printStackTrace();
@@ -118,6 +145,11 @@ public class MongoConverterImplementation implements MongoConverter {
             e.printStackTrace();
         }
 
+        MongoUpcaster[] chain = this.upcasterChains.computeIfAbsent(object.getClass(), this::compileUpcasterChain);
+        if (document != null && chain != NO_UPCASTERS) {
+            document.put(SCHEMA_VERSION_KEY, chain.length);
+        }
+
         return document;
     }
 
@@ -137,15 +169,203 @@ public class MongoConverterImplementation implements MongoConverter {
         // formatter: on
     }
 
+    @Override
+    public void warmUp(Class<?> entityClass, int conversions) {
+
+        if (entityClass == null) {
+            return;
+        }
+
+        ObjectMapper objectMapper = getObjectMapper();
+        objectMapper.canSerialize(entityClass);
+        objectMapper.canDeserialize(objectMapper.constructType(entityClass));
+
+        if (conversions <= 0) {
+            return;
+        }
+
+        Object entity;
+        try {
+            Constructor<?> constructor = entityClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            entity = constructor.newInstance();
+        }
+        catch (ReflectiveOperationException | SecurityException e) {
+            return;
+        }
+
+        for (int i = 0; i < conversions; i++) {
+            entityFrom(documentFrom(entity), entityClass);
+        }
+    }
+
+    @Override
+    public void registerUpcaster(Class<?> entityClass, MongoUpcaster upcaster) {
+
+        if (entityClass == null || upcaster == null) {
+            return;
+        }
+
+        this.registeredUpcasters.computeIfAbsent(entityClass, c -> new CopyOnWriteArrayList<>()).add(upcaster);
+        this.upcasterChains.remove(entityClass);
+    }
+
+    @Override
+    public void addUpcastListener(UpcastListener listener) {
+
+        if (listener == null) {
+            return;
+        }
+
+        this.upcastListeners.add(listener);
+    }
+
+    private Document upcastAndNotify(Document document, Class<?> entityClass) {
+
+        Document upgraded = upcast(document, entityClass);
+        if (upgraded == null) {
+            Document current = new Document(document);
+            current.remove(SCHEMA_VERSION_KEY);
+            return current;
+        }
+
+        if (this.upcastListeners.isEmpty() == false) {
+            Document original = deepCopy(document);
+            Document copy = deepCopy(upgraded);
+            this.upcastListeners.forEach(listener -> listener.upcasted(entityClass, original, copy));
+        }
+
+        upgraded.remove(SCHEMA_VERSION_KEY);
+
+        return upgraded;
+    }
+
+    @Override
+    public Document upcast(Document document, Class<?> entityClass) {
+
+        if (document == null || entityClass == null) {
+            return null;
+        }
+
+        MongoUpcaster[] chain = this.upcasterChains.computeIfAbsent(entityClass, this::compileUpcasterChain);
+        if (chain == NO_UPCASTERS) {
+            return null;
+        }
+
+        Object storedVersion = document.get(SCHEMA_VERSION_KEY);
+        int version = storedVersion instanceof Number ? ((Number) storedVersion).intValue() : 0;
+        if (version >= chain.length) {
+            return null;
+        }
+
+        Document current = deepCopy(document);
+        current.remove(SCHEMA_VERSION_KEY);
+        for (int step = Math.max(version, 0); step < chain.length; step++) {
+            if (chain[step] == null) {
+                String msg = String.format("No upcaster from schema version %d for class '%s'", step,
+                    entityClass.getSimpleName());
+                throw new IllegalStateException(msg);
+            }
+            current = chain[step].upcast(current);
+        }
+        current.put(SCHEMA_VERSION_KEY, chain.length);
+
+        return current;
+    }
+
+    private static Document deepCopy(Document document) {
+
+        Document copy = new Document();
+        for (Map.Entry<String, Object> entry : document.entrySet()) {
+            copy.put(entry.getKey(), deepCopyValue(entry.getValue()));
+        }
+
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object deepCopyValue(Object value) {
+
+        if (value instanceof Document) {
+            return deepCopy((Document) value);
+        }
+
+        if (value instanceof Map) {
+            return deepCopy(new Document((Map<String, Object>) value));
+        }
+
+        if (value instanceof List) {
+            List<Object> copy = Lists.newArrayListWithCapacity(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                copy.add(deepCopyValue(element));
+            }
+            return copy;
+        }
+
+        if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        }
+
+        return value;
+    }
+
+    /**
+     * Compiles the upcasters of a class into an array indexed by the version they upgrade from.
+     */
+    private MongoUpcaster[] compileUpcasterChain(Class<?> entityClass) {
+
+        io.seventyone.mongoutils.annotations.MongoCollection annotation;
+        annotation = entityClass.getAnnotation(io.seventyone.mongoutils.annotations.MongoCollection.class);
+        if (annotation == null || annotation.schemaVersion() <= 0) {
+            return NO_UPCASTERS;
+        }
+
+        List<MongoUpcaster> upcasters = Lists.newArrayList();
+        for (Class<? extends MongoUpcaster> upcasterClass : annotation.upcasters()) {
+            try {
+                upcasters.add(upcasterClass.getDeclaredConstructor().newInstance());
+            }
+            catch (ReflectiveOperationException e) {
+                String msg = String.format("Upcaster '%s' needs a public default constructor",
+                    upcasterClass.getSimpleName());
+                throw new IllegalStateException(msg, e);
+            }
+        }
+        upcasters.addAll(this.registeredUpcasters.getOrDefault(entityClass, Collections.emptyList()));
+
+        MongoUpcaster[] chain = new MongoUpcaster[annotation.schemaVersion()];
+        for (MongoUpcaster upcaster : upcasters) {
+            int from = upcaster.fromVersion();
+            if (from < 0 || from >= chain.length) {
+                String msg = String.format("Upcaster '%s' from schema version %d out of range 0-%d for class '%s'",
+                    upcaster.getClass().getSimpleName(), from, chain.length - 1, entityClass.getSimpleName());
+                throw new IllegalStateException(msg);
+            }
+            chain[from] = upcaster;
+        }
+
+        return chain;
+    }
+
     private ObjectMapper getObjectMapper() {
         if (this.objectMapper == null) {
             this.objectMapper = new ObjectMapper();
             this.objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
             this.objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
             this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+            registerMongoSupport(this.objectMapper);
         }
 
         return this.objectMapper;
     }
 
+    private static void registerMongoSupport(ObjectMapper objectMapper) {
+        AnnotationIntrospector current = objectMapper.getSerializationConfig().getAnnotationIntrospector();
+        objectMapper.setAnnotationIntrospector(AnnotationIntrospector.pair(new MongoAnnotationIntrospector(), current));
+
+        SimpleModule module = new SimpleModule("mongo-utils");
+        module.addSerializer(Binary.class, new BinarySerializer());
+        objectMapper.registerModule(module);
+    }
+
 }
@@ -15,10 +15,16 @@
  */
 package io.seventyone.mongoutils;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
 import com.mongodb.client.MongoCollection;
 
+import io.seventyone.mongoutils.analysis.IndexReport;
+
 
 /**
  * Convience wrapper for setting up / accessing a database.
@@ -28,6 +34,9 @@ public interface MongoService {
     static final String DEFAULT_HOST = "localhost";
     static final int    DEFAULT_PORT = 27017;
 
+    static final long DEFAULT_BLOOM_FILTER_BITS     = 1L << 23;
+    static final long DEFAULT_BLOOM_FILTER_CAPACITY = 1000000L;
+
     /**
      * Get collection by name.
      *
@@ -44,6 +53,155 @@ public interface MongoService {
      */
     MongoCollection<Document> getCollection(Class<?> entityClass);
 
+    /**
+     * Get the oplog of the replica set, only available if connected to a replica set.
+     *
+     * @return the oplog collection
+     */
+    MongoCollection<Document> getOplog();
+
+    /**
+     * Runs a command against the database.
+     *
+     * @param command the command
+     * @return the command result
+     */
+    Document runCommand(Bson command);
+
+    /**
+     * Find all documents of a collection by {@link io.seventyone.mongoutils.annotations.MongoCollection} annotation
+     * matching a filter.
+     * <p>
+     * The read is hedged if hedged reads are enabled.
+     *
+     * @param entityClass the entity class
+     * @param filter the query filter, null matches all documents
+     * @return the matching documents
+     */
+    List<Document> find(Class<?> entityClass, Bson filter);
+
+    /**
+     * Find all documents of a collection by name matching a filter.
+     * <p>
+     * The read is hedged if hedged reads are enabled.
+     *
+     * @param collectionName the collection name
+     * @param filter the query filter, null matches all documents
+     * @return the matching documents
+     */
+    List<Document> find(String collectionName, Bson filter);
+
+    /**
+     * Returns the metrics of hedged reads.
+     *
+     * @return the metrics, or null if hedged reads are disabled
+     */
+    HedgedReadMetrics getHedgedReadMetrics();
+
+    /**
+     * Run an aggregation pipeline on a collection by {@link io.seventyone.mongoutils.annotations.MongoCollection}
+     * annotation.
+     * <p>
+     * Results are converted to the result class and cached if the query cache is enabled. Cached results are shared
+     * by all callers, don't modify the returned entities or documents.
+     *
+     * @param entityClass the entity class
+     * @param pipeline the aggregation pipeline
+     * @param resultClass the result class, {@link org.bson.Document} for unconverted results
+     * @return the unmodifiable results
+     */
+    <T> List<T> aggregate(Class<?> entityClass, List<? extends Bson> pipeline, Class<T> resultClass);
+
+    /**
+     * Run an aggregation pipeline on a collection by name.
+     * <p>
+     * Results are converted to the result class and cached if the query cache is enabled. Cached results are shared
+     * by all callers, don't modify the returned entities or documents.
+     *
+     * @param collectionName the collection name
+     * @param pipeline the aggregation pipeline
+     * @param resultClass the result class, {@link org.bson.Document} for unconverted results
+     * @return the unmodifiable results
+     */
+    <T> List<T> aggregate(String collectionName, List<? extends Bson> pipeline, Class<T> resultClass);
+
+    /**
+     * Count the documents of a collection by {@link io.seventyone.mongoutils.annotations.MongoCollection} annotation
+     * matching a filter.
+     * <p>
+     * The count is cached if the query cache is enabled.
+     *
+     * @param entityClass the entity class
+     * @param filter the query filter, null matches all documents
+     * @return the number of matching documents
+     */
+    long count(Class<?> entityClass, Bson filter);
+
+    /**
+     * Count the documents of a collection by name matching a filter.
+     * <p>
+     * The count is cached if the query cache is enabled.
+     *
+     * @param collectionName the collection name
+     * @param filter the query filter, null matches all documents
+     * @return the number of matching documents
+     */
+    long count(String collectionName, Bson filter);
+
+    /**
+     * Removes the cached aggregation and count results of a collection.
+     * <p>
+     * Inserts through this service invalidate the collection automatically, other changes need an explicit
+     * invalidation.
+     *
+     * @param collectionName the collection name
+     */
+    void invalidateQueryCache(String collectionName);
+
+    /**
+     * Insert a document into a collection by {@link io.seventyone.mongoutils.annotations.MongoCollection} annotation.
+     * <p>
+     * Updates the Bloom filters of the collection.
+     *
+     * @param entityClass the entity class
+     * @param document the document
+     */
+    void insert(Class<?> entityClass, Document document);
+
+    /**
+     * Insert a document into a collection by name.
+     * <p>
+     * Updates the Bloom filters of the collection.
+     *
+     * @param collectionName the collection name
+     * @param document the document
+     */
+    void insert(String collectionName, Document document);
+
+    /**
+     * Checks if a document with the given value exists in a collection by
+     * {@link io.seventyone.mongoutils.annotations.MongoCollection} annotation.
+     * <p>
+     * If the key has a {@link io.seventyone.mongoutils.annotations.MongoIndex} with Bloom filter a definite miss is
+     * answered without a query once the filter is loaded. Values not supported by the filter, e.g. null, arrays or
+     * embedded documents, are always queried, see {@link io.seventyone.mongoutils.BloomFilter#isSupported(Object)}.
+     *
+     * @param entityClass the entity class
+     * @param key the document field name
+     * @param value the value
+     * @return true if a document exists
+     */
+    boolean exists(Class<?> entityClass, String key, Object value);
+
+    /**
+     * Returns the metrics of the Bloom filter of an index.
+     *
+     * @param entityClass the entity class
+     * @param key the index key
+     * @return the metrics, or null if the index has no Bloom filter
+     */
+    BloomFilterMetrics getBloomFilterMetrics(Class<?> entityClass, String key);
+
     /**
      * Setup a collection according to its {@link io.seventyone.mongoutils.annotations.MongoCollection} and
      * {@link io.seventyone.mongoutils.annotations.MongoIndex} annotations.
@@ -85,4 +243,33 @@ public interface MongoService {
      */
     void autoSetup(String packageName);
 
+    /**
+     * Analyze the index footprint and usage of all {@link io.seventyone.mongoutils.annotations.MongoCollection}
+     * classes of a package, e.g. before a release.
+     * <p>
+     * Flags unused, redundant-prefix, oversized, undeclared and missing indexes, see
+     * {@link io.seventyone.mongoutils.analysis.IndexFlag}.
+     *
+     * @param packageName the package name
+     * @return the report
+     */
+    IndexReport analyzeIndexes(String packageName);
+
+    /**
+     * Opens connections and checks the server is reachable.
+     *
+     * @param connections the number of connections to open concurrently, at most the maximum connections per host
+     */
+    void warmUpConnections(int connections);
+
+    /**
+     * Readiness signal, completes when the warm-up started by
+     * {@link io.seventyone.mongoutils.builder.MongoServiceBuilder#build()} is done.
+     * <p>
+     * Completes exceptionally if the warm-up failed, is already completed if no warm-up was configured.
+     *
+     * @return the readiness future
+     */
+    CompletableFuture<MongoService> ready();
+
 }
\ No newline at end of file
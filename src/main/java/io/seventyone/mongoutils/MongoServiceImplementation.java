@@ -17,10 +17,20 @@ package io.seventyone.mongoutils;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.StringUtils;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.reflections.Reflections;
 import org.reflections.scanners.SubTypesScanner;
 import org.reflections.scanners.TypeAnnotationsScanner;
@@ -28,29 +38,74 @@ import org.reflections.util.ClasspathHelper;
 import org.reflections.util.ConfigurationBuilder;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
 import com.mongodb.MongoCredential;
+import com.mongodb.MongoException;
+import com.mongodb.MongoInterruptedException;
 import com.mongodb.ServerAddress;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
 import com.mongodb.client.model.IndexOptions;
 
+import io.seventyone.mongoutils.analysis.IndexAnalyzer;
+import io.seventyone.mongoutils.analysis.IndexReport;
 import io.seventyone.mongoutils.annotations.MongoIndex;
+import io.seventyone.mongoutils.workload.WorkloadRecorder;
 
 public class MongoServiceImplementation implements AutoCloseable, MongoService {
 
-    private final MongoDatabase db;
-    private final MongoClient   mongoClient;
+    private final MongoDatabase   db;
+    private final MongoClient     mongoClient;
+    private volatile HedgedReader hedgedReader;
+
+    private final Map<String, BloomFilter> bloomFilters        = new ConcurrentHashMap<>();
+    private long                           bloomFilterBits     = MongoService.DEFAULT_BLOOM_FILTER_BITS;
+    private long                           bloomFilterCapacity = MongoService.DEFAULT_BLOOM_FILTER_CAPACITY;
+
+    private MongoConverter                           converter;
+    private int                                      warmUpConversions;
+    private volatile MongoConverter                  resultConverter = new MongoConverterImplementation();
+    private volatile CompletableFuture<MongoService> ready = CompletableFuture.completedFuture(this);
+
+    private volatile WorkloadRecorder recorder;
+    private QueryCache                queryCache;
 
     public MongoServiceImplementation(String host, int port, String dbName, String user, String password) {
+        this(host, port, dbName, user, password, MongoClientOptions.builder().build());
+    }
+
+    public MongoServiceImplementation(String host, int port, String dbName, String user, String password,
+                                      MongoClientOptions options) {
 
         ServerAddress serverAddress = new ServerAddress(host, port);
         if (StringUtils.isBlank(user)) {
-            this.mongoClient = new MongoClient(serverAddress);
+            this.mongoClient = new MongoClient(serverAddress, options);
+        }
+        else {
+            MongoCredential credential = MongoCredential.createCredential(user, dbName, password.toCharArray());
+            this.mongoClient = new MongoClient(serverAddress, Collections.singletonList(credential), options);
+        }
+
+        this.db = this.mongoClient.getDatabase(dbName);
+    }
+
+    public MongoServiceImplementation(List<ServerAddress> seeds, String dbName, String user, String password) {
+        this(seeds, dbName, user, password, MongoClientOptions.builder().build());
+    }
+
+    public MongoServiceImplementation(List<ServerAddress> seeds, String dbName, String user, String password,
+                                      MongoClientOptions options) {
+
+        if (StringUtils.isBlank(user)) {
+            this.mongoClient = new MongoClient(seeds, options);
         }
         else {
             MongoCredential credential = MongoCredential.createCredential(user, dbName, password.toCharArray());
-            this.mongoClient = new MongoClient(serverAddress, Collections.singletonList(credential));
+            this.mongoClient = new MongoClient(seeds, Collections.singletonList(credential), options);
         }
 
         this.db = this.mongoClient.getDatabase(dbName);
@@ -76,6 +131,10 @@ public class MongoServiceImplementation implements AutoCloseable, MongoService {
 
     @Override
     public MongoCollection<Document> getCollection(Class<?> entityClass) {
+        return this.getCollection(collectionNameOf(entityClass));
+    }
+
+    private String collectionNameOf(Class<?> entityClass) {
         io.seventyone.mongoutils.annotations.MongoCollection annotation;
         annotation = entityClass.getAnnotation(io.seventyone.mongoutils.annotations.MongoCollection.class);
 
@@ -88,7 +147,329 @@ public class MongoServiceImplementation implements AutoCloseable, MongoService {
         if (StringUtils.isBlank(collectionName)) {
             collectionName = entityClass.getSimpleName();
         }
-        return this.getCollection(annotation.value());
+        return collectionName;
+    }
+
+    @Override
+    public MongoCollection<Document> getOplog() {
+        return this.mongoClient.getDatabase("local").getCollection("oplog.rs");
+    }
+
+    @Override
+    public Document runCommand(Bson command) {
+
+        if (command == null) {
+            return null;
+        }
+
+        return this.db.runCommand(command);
+    }
+
+    @Override
+    public List<Document> find(Class<?> entityClass, Bson filter) {
+
+        if (entityClass == null) {
+            return null;
+        }
+
+        return internalFind(this.getCollection(entityClass), filter);
+    }
+
+    @Override
+    public List<Document> find(String collectionName, Bson filter) {
+
+        if (StringUtils.isBlank(collectionName)) {
+            return null;
+        }
+
+        return internalFind(this.getCollection(collectionName), filter);
+    }
+
+    private List<Document> internalFind(MongoCollection<Document> collection, Bson filter) {
+
+        Bson query = filter == null ? new Document() : filter;
+
+        HedgedReader hedgedReader = this.hedgedReader;
+        if (hedgedReader != null) {
+            return hedgedReader.find(collection, query);
+        }
+
+        return collection.find(query).into(Lists.newArrayList());
+    }
+
+    /**
+     * Provide a {@link io.seventyone.mongoutils.HedgedReader} to enable hedged reads for {@link #find(Class, Bson)}
+     * and {@link #find(String, Bson)}, or null to disable them.
+     */
+    public synchronized void provideHedgedReader(HedgedReader hedgedReader) {
+        HedgedReader previous = this.hedgedReader;
+        this.hedgedReader = hedgedReader;
+        if (previous != null && previous != hedgedReader) {
+            previous.close();
+        }
+    }
+
+    @Override
+    public HedgedReadMetrics getHedgedReadMetrics() {
+        HedgedReader hedgedReader = this.hedgedReader;
+        return hedgedReader == null ? null : hedgedReader.getMetrics();
+    }
+
+    @Override
+    public <T> List<T> aggregate(Class<?> entityClass, List<? extends Bson> pipeline, Class<T> resultClass) {
+
+        if (entityClass == null) {
+            return null;
+        }
+
+        return internalAggregate(this.getCollection(entityClass), pipeline, resultClass);
+    }
+
+    @Override
+    public <T> List<T> aggregate(String collectionName, List<? extends Bson> pipeline, Class<T> resultClass) {
+
+        if (StringUtils.isBlank(collectionName)) {
+            return null;
+        }
+
+        return internalAggregate(this.getCollection(collectionName), pipeline, resultClass);
+    }
+
+    private <T> List<T> internalAggregate(MongoCollection<Document> collection, List<? extends Bson> pipeline,
+                                          Class<T> resultClass) {
+
+        if (pipeline == null || resultClass == null) {
+            return null;
+        }
+
+        Supplier<List<T>> loader = () -> {
+            List<Document> documents = collection.aggregate(pipeline).into(Lists.newArrayList());
+            return Collections.unmodifiableList(convert(documents, resultClass));
+        };
+
+        if (this.queryCache == null) {
+            return loader.get();
+        }
+
+        String collectionName = collection.getNamespace().getCollectionName();
+        String key = QueryCache.key(collectionName, "aggregate:" + resultClass.getName(),
+            collection.getCodecRegistry(), pipeline);
+        return this.queryCache.get(collectionName, key, loader);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> convert(List<Document> documents, Class<T> resultClass) {
+
+        if (resultClass == Document.class) {
+            return (List<T>) documents;
+        }
+
+        return this.resultConverter.entitiesFrom(documents, resultClass);
+    }
+
+    @Override
+    public long count(Class<?> entityClass, Bson filter) {
+
+        if (entityClass == null) {
+            return 0L;
+        }
+
+        return internalCount(this.getCollection(entityClass), filter);
+    }
+
+    @Override
+    public long count(String collectionName, Bson filter) {
+
+        if (StringUtils.isBlank(collectionName)) {
+            return 0L;
+        }
+
+        return internalCount(this.getCollection(collectionName), filter);
+    }
+
+    private long internalCount(MongoCollection<Document> collection, Bson filter) {
+
+        Bson query = filter == null ? new Document() : filter;
+
+        Supplier<Long> loader = () -> collection.count(query);
+
+        if (this.queryCache == null) {
+            return loader.get();
+        }
+
+        String collectionName = collection.getNamespace().getCollectionName();
+        String key = QueryCache.key(collectionName, "count", collection.getCodecRegistry(), query);
+        return this.queryCache.get(collectionName, key, loader);
+    }
+
+    /**
+     * Provide a {@link io.seventyone.mongoutils.QueryCache} to cache the results of
+     * {@link #aggregate(String, List, Class)} and {@link #count(String, Bson)}, or null to disable caching.
+     */
+    public void provideQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    @Override
+    public void invalidateQueryCache(String collectionName) {
+
+        if (this.queryCache == null || StringUtils.isBlank(collectionName)) {
+            return;
+        }
+
+        this.queryCache.invalidate(collectionName);
+    }
+
+    @Override
+    public void insert(Class<?> entityClass, Document document) {
+
+        if (entityClass == null || document == null) {
+            return;
+        }
+
+        internalInsert(this.getCollection(entityClass), document);
+    }
+
+    @Override
+    public void insert(String collectionName, Document document) {
+
+        if (StringUtils.isBlank(collectionName) || document == null) {
+            return;
+        }
+
+        internalInsert(this.getCollection(collectionName), document);
+    }
+
+    private void internalInsert(MongoCollection<Document> collection, Document document) {
+
+        // Values are added before the insert, so a concurrent exists() never misses a stored document
+        String prefix = collection.getNamespace().getCollectionName() + ".";
+        this.bloomFilters.forEach((name, filter) -> {
+            if (name.startsWith(prefix)) {
+                valuesOf(document, name.substring(prefix.length())).forEach(filter::put);
+            }
+        });
+
+        collection.insertOne(document);
+
+        invalidateQueryCache(collection.getNamespace().getCollectionName());
+    }
+
+    @Override
+    public boolean exists(Class<?> entityClass, String key, Object value) {
+
+        if (entityClass == null || StringUtils.isBlank(key)) {
+            return false;
+        }
+
+        String collectionName = collectionNameOf(entityClass);
+        BloomFilter filter = this.bloomFilters.get(collectionName + "." + key);
+        if (filter != null && (filter.isLoaded() == false || BloomFilter.isSupported(value) == false)) {
+            filter = null;
+        }
+
+        if (filter != null) {
+            filter.getMetrics().recordProbe();
+            if (filter.mightContain(value) == false) {
+                filter.getMetrics().recordMiss();
+                return false;
+            }
+        }
+
+        Document query = new Document(key, value);
+        Document projection = new Document("_id", 1);
+        MongoCollection<Document> collection = this.getCollection(collectionName);
+
+        boolean found = collection.find(query).projection(projection).first() != null;
+
+        if (filter != null && found == false) {
+            filter.getMetrics().recordFalsePositive();
+        }
+
+        return found;
+    }
+
+    @Override
+    public BloomFilterMetrics getBloomFilterMetrics(Class<?> entityClass, String key) {
+
+        if (entityClass == null || StringUtils.isBlank(key)) {
+            return null;
+        }
+
+        BloomFilter filter = this.bloomFilters.get(collectionNameOf(entityClass) + "." + key);
+        return filter == null ? null : filter.getMetrics();
+    }
+
+    /**
+     * Provide the {@link io.seventyone.mongoutils.workload.WorkloadRecorder} registered as command listener in the
+     * client options, it's closed with the service.
+     */
+    public void provideWorkloadRecorder(WorkloadRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Sets the size in bits of Bloom filters created by subsequent index setups.
+     */
+    public void provideBloomFilterBits(long bloomFilterBits) {
+        this.bloomFilterBits = bloomFilterBits;
+    }
+
+    /**
+     * Sets the expected number of values of Bloom filters created by subsequent index setups, used to choose the
+     * number of hash functions.
+     */
+    public void provideBloomFilterCapacity(long bloomFilterCapacity) {
+        this.bloomFilterCapacity = bloomFilterCapacity;
+    }
+
+    private void internalSetupBloomFilter(MongoCollection<Document> collection, String key) {
+
+        // formatter: off
+        FindIterable<Document> values = collection
+            .find()
+            .projection(new Document(key, 1).append("_id", "_id".equals(key) ? 1 : 0))
+            .batchSize(10000);
+        // formatter: on
+
+        long capacity = Math.max(this.bloomFilterCapacity, collection.count());
+        BloomFilter filter = new BloomFilter(this.bloomFilterBits, capacity);
+
+        // Registered before streaming so concurrent inserts are added, exists() queries until it's loaded
+        this.bloomFilters.put(collection.getNamespace().getCollectionName() + "." + key, filter);
+        for (Document document : values) {
+            valuesOf(document, key).forEach(filter::put);
+        }
+
+        filter.markLoaded();
+    }
+
+    /**
+     * Returns the indexed values of a key, one per array element like a multikey index.
+     */
+    private static List<Object> valuesOf(Document document, String key) {
+
+        List<Object> values = Lists.newArrayList();
+        collectValues(document, StringUtils.split(key, '.'), 0, values);
+
+        return values;
+    }
+
+    private static void collectValues(Object value, String[] path, int index, List<Object> values) {
+
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                collectValues(element, path, index, values);
+            }
+        }
+        else if (index == path.length) {
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        else if (value instanceof Document) {
+            collectValues(((Document) value).get(path[index]), path, index + 1, values);
+        }
     }
 
     @Override
@@ -98,7 +479,7 @@ public class MongoServiceImplementation implements AutoCloseable, MongoService {
             return;
         }
 
-        this.setupIndexes(entityClass);
+        this.setupCollection(entityClass, collectionNameOf(entityClass));
     }
 
     @Override
@@ -108,9 +489,39 @@ public class MongoServiceImplementation implements AutoCloseable, MongoService {
             return;
         }
 
+        internalCreateCollection(entityClass, collectionName);
         this.setupIndexes(entityClass, collectionName);
     }
 
+    private void internalCreateCollection(Class<?> entityClass, String collectionName) {
+
+        io.seventyone.mongoutils.annotations.MongoCollection annotation;
+        annotation = entityClass.getAnnotation(io.seventyone.mongoutils.annotations.MongoCollection.class);
+
+        if (annotation == null || annotation.capped() == false) {
+            return;
+        }
+
+        if (annotation.cappedSize() <= 0) {
+            String message = String.format("Capped collection '%s' needs a positive 'cappedSize'", collectionName);
+            throw new IllegalArgumentException(message);
+        }
+
+        for (String existing : this.db.listCollectionNames()) {
+            if (existing.equals(collectionName)) {
+                return;
+            }
+        }
+
+        CreateCollectionOptions options = new CreateCollectionOptions();
+        options.capped(true);
+        options.sizeInBytes(annotation.cappedSize());
+        if (annotation.cappedMax() > 0) {
+            options.maxDocuments(annotation.cappedMax());
+        }
+        this.db.createCollection(collectionName, options);
+    }
+
     @Override
     public void setupIndexes(Class<?> entityClass) {
 
@@ -148,6 +559,10 @@ public class MongoServiceImplementation implements AutoCloseable, MongoService {
                 options.unique(index.unique());
                 options.background(index.background());
                 collection.createIndex(indexDocument, options);
+
+                if (index.unique() && index.bloomFilter()) {
+                    internalSetupBloomFilter(collection, index.key());
+                }
             }
         }
     }
@@ -155,6 +570,20 @@ public class MongoServiceImplementation implements AutoCloseable, MongoService {
     @Override
     public void autoSetup(String packageName) {
 
+        scanCollections(packageName).forEach(c -> {
+            io.seventyone.mongoutils.annotations.MongoCollection annotation;
+            annotation = c.getAnnotation(io.seventyone.mongoutils.annotations.MongoCollection.class);
+            if (annotation.noAutoSetup() == false) {
+                this.setupCollection(c);
+            }
+            if (this.converter != null) {
+                this.converter.warmUp(c, this.warmUpConversions);
+            }
+        });
+    }
+
+    private Set<Class<?>> scanCollections(String packageName) {
+
         List<ClassLoader> classLoadersList = Lists.newArrayList();
         ClassLoader contextClassLoader = ClasspathHelper.contextClassLoader();
         classLoadersList.add(contextClassLoader);
@@ -172,19 +601,125 @@ public class MongoServiceImplementation implements AutoCloseable, MongoService {
         // formatter: on
         Reflections reflections = new Reflections(configuration);
 
-        Set<Class<?>> collections =
-            reflections.getTypesAnnotatedWith(io.seventyone.mongoutils.annotations.MongoCollection.class);
-        collections.forEach(c -> {
-            io.seventyone.mongoutils.annotations.MongoCollection annotation;
-            annotation = c.getAnnotation(io.seventyone.mongoutils.annotations.MongoCollection.class);
-            if (annotation.noAutoSetup() == false) {
-                this.setupCollection(c, annotation.value());
+        return reflections.getTypesAnnotatedWith(io.seventyone.mongoutils.annotations.MongoCollection.class);
+    }
+
+    @Override
+    public IndexReport analyzeIndexes(String packageName) {
+
+        Map<Class<?>, String> collections = Maps.newHashMap();
+        scanCollections(packageName).forEach(c -> collections.put(c, collectionNameOf(c)));
+
+        return new IndexAnalyzer(this.db, IndexAnalyzer.DEFAULT_OVERSIZE_RATIO).analyze(collections);
+    }
+
+    /**
+     * Provide a {@link io.seventyone.mongoutils.MongoConverter} whose readers and writers are warmed up for the
+     * collection classes found by {@link #autoSetup(String)}.
+     *
+     * @param converter the converter
+     * @param warmUpConversions number of synthetic conversions per class, 0 to only build the readers and writers
+     */
+    public void provideConverter(MongoConverter converter, int warmUpConversions) {
+        this.converter = converter;
+        this.warmUpConversions = warmUpConversions;
+    }
+
+    /**
+     * Provide the {@link io.seventyone.mongoutils.MongoConverter} converting aggregation results to result classes.
+     *
+     * @param resultConverter the converter
+     */
+    public void provideResultConverter(MongoConverter resultConverter) {
+        this.resultConverter = resultConverter;
+    }
+
+    @Override
+    public void warmUpConnections(int connections) {
+
+        Document ping = new Document("ping", 1);
+        this.db.runCommand(ping);
+
+        // More concurrent pings than pooled connections would only wait for a free one
+        int poolSize = Math.min(connections, this.mongoClient.getMongoClientOptions().getConnectionsPerHost());
+        if (poolSize <= 1) {
+            return;
+        }
+
+        // All pings are started at once, so each one needs its own pooled connection
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        CyclicBarrier barrier = new CyclicBarrier(poolSize);
+        try {
+            List<Future<Document>> pings = Lists.newArrayList();
+            for (int i = 0; i < poolSize; i++) {
+                pings.add(executor.submit(() -> {
+                    barrier.await();
+                    return this.db.runCommand(ping);
+                }));
             }
-        });
+            for (Future<Document> future : pings) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoInterruptedException("Interrupted while warming up connections", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new MongoException("Warming up connections failed", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Warms up the service in the background: opens connections and runs {@link #autoSetup(String)} for the packages.
+     * <p>
+     * {@link #ready()} completes when the warm-up is done.
+     *
+     * @param connections the number of connections to open
+     * @param packageNames the packages to setup
+     * @return the readiness future
+     */
+    public CompletableFuture<MongoService> warmUp(int connections, List<String> packageNames) {
+
+        CompletableFuture<MongoService> future = new CompletableFuture<>();
+        this.ready = future;
+
+        Thread thread = new Thread(() -> {
+            try {
+                warmUpConnections(connections);
+                packageNames.forEach(this::autoSetup);
+                future.complete(this);
+            }
+            catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, "mongo-utils-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<MongoService> ready() {
+        return this.ready;
     }
 
     @Override
     public void close() throws Exception {
+        HedgedReader hedgedReader = this.hedgedReader;
+        if (hedgedReader != null) {
+            hedgedReader.close();
+        }
+        if (this.recorder != null) {
+            this.recorder.close();
+        }
         this.mongoClient.close();
     }
 
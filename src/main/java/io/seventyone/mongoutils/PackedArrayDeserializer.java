@@ -0,0 +1,120 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.bson.types.Binary;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+/**
+ * Reads {@link io.seventyone.mongoutils.annotations.MongoPackedArray} properties from a little-endian binary directly
+ * into a primitive array.
+ * <p>
+ * Regular arrays, e.g. of documents written before the property was annotated, are read by the default deserializer.
+ */
+class PackedArrayDeserializer extends StdDeserializer<Object> implements ContextualDeserializer {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JavaType            type;
+    private final JsonDeserializer<?> fallback;
+
+    PackedArrayDeserializer() {
+        this(null, null);
+    }
+
+    private PackedArrayDeserializer(JavaType type, JsonDeserializer<?> fallback) {
+        super(type == null ? Object.class : type.getRawClass());
+        this.type = type;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(DeserializationContext ctxt, BeanProperty property)
+        throws JsonMappingException {
+
+        JavaType type = property == null ? null : property.getType();
+        if (type == null || isSupported(type.getRawClass()) == false) {
+            String msg = String.format("@MongoPackedArray not supported for type '%s'", type);
+            throw ctxt.mappingException(msg);
+        }
+
+        return new PackedArrayDeserializer(type, ctxt.findContextualValueDeserializer(type, property));
+    }
+
+    @Override
+    public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+
+        JsonToken token = p.getCurrentToken();
+        if (token == JsonToken.START_ARRAY && this.fallback != null) {
+            return this.fallback.deserialize(p, ctxt);
+        }
+
+        byte[] bytes;
+        if (token == JsonToken.VALUE_EMBEDDED_OBJECT && p.getEmbeddedObject() instanceof Binary) {
+            bytes = ((Binary) p.getEmbeddedObject()).getData();
+        }
+        else if (token == JsonToken.VALUE_EMBEDDED_OBJECT || token == JsonToken.VALUE_STRING) {
+            bytes = p.getBinaryValue();
+        }
+        else {
+            throw ctxt.mappingException(handledType(), token);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        Class<?> rawClass = this.type.getRawClass();
+        if (rawClass == double[].class) {
+            double[] array = new double[checkedLength(ctxt, bytes, Double.BYTES)];
+            buffer.asDoubleBuffer().get(array);
+            return array;
+        }
+        if (rawClass == long[].class) {
+            long[] array = new long[checkedLength(ctxt, bytes, Long.BYTES)];
+            buffer.asLongBuffer().get(array);
+            return array;
+        }
+        int[] array = new int[checkedLength(ctxt, bytes, Integer.BYTES)];
+        buffer.asIntBuffer().get(array);
+        return array;
+    }
+
+    private int checkedLength(DeserializationContext ctxt, byte[] bytes, int elementSize) throws JsonMappingException {
+
+        if (bytes.length % elementSize != 0) {
+            String msg = String.format("Packed array of %d bytes can't be read as '%s'", bytes.length, this.type);
+            throw ctxt.mappingException(msg);
+        }
+
+        return bytes.length / elementSize;
+    }
+
+    private static boolean isSupported(Class<?> rawClass) {
+        return rawClass == double[].class || rawClass == long[].class || rawClass == int[].class;
+    }
+
+}
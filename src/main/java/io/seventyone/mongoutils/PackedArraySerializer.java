@@ -0,0 +1,70 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Writes primitive arrays of {@link io.seventyone.mongoutils.annotations.MongoPackedArray} properties as a single
+ * little-endian binary.
+ */
+class PackedArraySerializer extends StdSerializer<Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    PackedArraySerializer() {
+        super(Object.class);
+    }
+
+    @Override
+    public void serialize(Object value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+
+        ByteBuffer buffer;
+        if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            buffer = allocate(array.length * Double.BYTES);
+            buffer.asDoubleBuffer().put(array);
+        }
+        else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            buffer = allocate(array.length * Long.BYTES);
+            buffer.asLongBuffer().put(array);
+        }
+        else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            buffer = allocate(array.length * Integer.BYTES);
+            buffer.asIntBuffer().put(array);
+        }
+        else {
+            String msg = String.format("@MongoPackedArray not supported for type '%s'", value.getClass().getName());
+            throw new JsonMappingException(msg);
+        }
+
+        gen.writeBinary(buffer.array());
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+}
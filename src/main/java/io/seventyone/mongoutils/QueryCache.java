@@ -0,0 +1,283 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoInterruptedException;
+
+/**
+ * Size-bounded LRU cache with TTL for query results, keyed by collection and a canonical hash of the query.
+ * <p>
+ * Concurrent misses for the same key are de-duplicated, only the first caller executes the query. Entries of a
+ * collection can be invalidated explicitly, results loaded while an invalidation happened are not cached.
+ */
+public class QueryCache {
+
+    private final int                               maxEntries;
+    private final long                              ttlNanos;
+    private final Map<String, Entry>                entries;
+    private final Map<String, CompletableFuture<?>> loading     = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong>           generations = new ConcurrentHashMap<>();
+    private final LongAdder                         hits        = new LongAdder();
+    private final LongAdder                         misses      = new LongAdder();
+
+    /**
+     * Creates a query cache.
+     *
+     * @param maxEntries the maximum number of cached results, the least recently used are evicted first
+     * @param ttlMillis the time a result is cached
+     */
+    public QueryCache(int maxEntries, long ttlMillis) {
+
+        if (maxEntries < 1) {
+            String msg = String.format("Max entries can't be '%d', must be positive", maxEntries);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (ttlMillis < 1) {
+            String msg = String.format("TTL can't be '%d', must be positive", ttlMillis);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > QueryCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result or loads it.
+     *
+     * @param collectionName the queried collection
+     * @param key the cache key, see {@link #key(String, String, CodecRegistry, Bson)}
+     * @param loader executes the query, its result must not be modified afterwards
+     * @return the result
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(String collectionName, String key, Supplier<V> loader) {
+
+        synchronized (this.entries) {
+            Entry entry = this.entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.expiresAt < 0) {
+                    this.hits.increment();
+                    return (V) entry.value;
+                }
+                this.entries.remove(key);
+            }
+        }
+        this.misses.increment();
+
+        AtomicLong generation = this.generations.computeIfAbsent(collectionName, c -> new AtomicLong());
+        long loadGeneration = generation.get();
+
+        // Only loads started after the last invalidation are joined, older ones might miss the caller's own writes
+        String loadingKey = loadGeneration + ":" + key;
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<?> existing = this.loading.putIfAbsent(loadingKey, future);
+        if (existing != null) {
+            return (V) await(existing);
+        }
+
+        try {
+            V value = loader.get();
+            synchronized (this.entries) {
+                if (generation.get() == loadGeneration) {
+                    this.entries.put(key, new Entry(collectionName, value, System.nanoTime() + this.ttlNanos));
+                }
+            }
+            future.complete(value);
+            return value;
+        }
+        catch (Throwable e) {
+            // Errors must complete the future as well, concurrent callers would wait forever otherwise
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            this.loading.remove(loadingKey, future);
+        }
+    }
+
+    /**
+     * Removes all cached results of a collection.
+     */
+    public void invalidate(String collectionName) {
+
+        this.generations.computeIfAbsent(collectionName, c -> new AtomicLong()).incrementAndGet();
+
+        synchronized (this.entries) {
+            Iterator<Entry> iterator = this.entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().collectionName.equals(collectionName)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void invalidateAll() {
+
+        this.generations.values().forEach(AtomicLong::incrementAndGet);
+
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * Number of results served from the cache.
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Number of results not found in the cache.
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Number of cached results, expired ones included.
+     */
+    public int getSize() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * Builds a cache key from an operation and its query.
+     * <p>
+     * The query is normalized first: the top-level fields of filters and {@code $match} stages are sorted, as their
+     * order doesn't change the result. The order inside of values, e.g. embedded documents, is kept.
+     *
+     * @param collectionName the queried collection
+     * @param operation the operation including anything else influencing the result, e.g. the result type
+     * @param codecRegistry the codec registry of the collection
+     * @param query the filter or a document containing the pipeline
+     * @return the cache key
+     */
+    public static String key(String collectionName, String operation, CodecRegistry codecRegistry, Bson query) {
+
+        BsonDocument normalized = normalize(query.toBsonDocument(Document.class, codecRegistry));
+        String canonical = collectionName + '\0' + operation + '\0' + normalized.toJson();
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder key = new StringBuilder(64);
+            for (byte b : digest.digest(canonical.getBytes(StandardCharsets.UTF_8))) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Builds a cache key from an operation and its pipeline, see {@link #key(String, String, CodecRegistry, Bson)}.
+     */
+    public static String key(String collectionName, String operation, CodecRegistry codecRegistry,
+                             List<? extends Bson> pipeline) {
+
+        BsonArray stages = new BsonArray();
+        for (Bson stage : pipeline) {
+            BsonDocument document = stage.toBsonDocument(Document.class, codecRegistry);
+            BsonValue match = document.get("$match");
+            if (document.size() == 1 && match != null && match.isDocument()) {
+                document = new BsonDocument("$match", normalize(match.asDocument()));
+            }
+            stages.add(document);
+        }
+
+        return key(collectionName, operation, codecRegistry, new BsonDocument("pipeline", stages));
+    }
+
+    private static BsonDocument normalize(BsonDocument document) {
+
+        BsonDocument sorted = new BsonDocument();
+        document.keySet().stream().sorted().forEach(key -> sorted.put(key, document.get(key)));
+
+        return sorted;
+    }
+
+    private static Object await(CompletableFuture<?> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoInterruptedException("Interrupted while waiting for query result", e);
+        }
+        catch (ExecutionException | CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new MongoException("Query failed", e.getCause());
+        }
+    }
+
+    private static class Entry {
+
+        private final String collectionName;
+        private final Object value;
+        private final long   expiresAt;
+
+        Entry(String collectionName, Object value, long expiresAt) {
+            this.collectionName = collectionName;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
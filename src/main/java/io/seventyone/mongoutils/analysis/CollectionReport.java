@@ -0,0 +1,136 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.analysis;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+
+/**
+ * Index footprint of a single collection.
+ */
+public class CollectionReport {
+
+    private final Class<?>         entityClass;
+    private final String           collectionName;
+    private final long             count;
+    private final long             dataSizeBytes;
+    private final long             totalIndexSizeBytes;
+    private final List<IndexUsage> indexes;
+
+    CollectionReport(Class<?> entityClass, String collectionName, long count, long dataSizeBytes,
+                     long totalIndexSizeBytes, List<IndexUsage> indexes) {
+        this.entityClass = entityClass;
+        this.collectionName = collectionName;
+        this.count = count;
+        this.dataSizeBytes = dataSizeBytes;
+        this.totalIndexSizeBytes = totalIndexSizeBytes;
+        this.indexes = indexes;
+    }
+
+    /**
+     * The entity class.
+     */
+    public Class<?> getEntityClass() {
+        return this.entityClass;
+    }
+
+    /**
+     * The collection name.
+     */
+    public String getCollectionName() {
+        return this.collectionName;
+    }
+
+    /**
+     * Number of documents.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Uncompressed size of all documents in bytes.
+     */
+    public long getDataSizeBytes() {
+        return this.dataSizeBytes;
+    }
+
+    /**
+     * Size of all indexes in bytes.
+     */
+    public long getTotalIndexSizeBytes() {
+        return this.totalIndexSizeBytes;
+    }
+
+    /**
+     * Estimated bytes written per byte of an inserted or deleted document, including all index entries.
+     */
+    public double getWriteAmplification() {
+
+        if (this.count == 0 || this.dataSizeBytes == 0) {
+            return 1.0;
+        }
+
+        long indexBytesPerDocument = this.indexes.stream().mapToLong(IndexUsage::getWriteCostBytes).sum();
+        double documentBytes = (double) this.dataSizeBytes / this.count;
+
+        return (documentBytes + indexBytesPerDocument) / documentBytes;
+    }
+
+    /**
+     * The indexes, existing and missing ones.
+     */
+    public List<IndexUsage> getIndexes() {
+        return this.indexes;
+    }
+
+    /**
+     * Returns the machine-readable form.
+     */
+    public Document toDocument() {
+
+        Document document = new Document("collection", this.collectionName);
+        document.append("entityClass", this.entityClass.getName());
+        document.append("count", this.count);
+        document.append("dataSizeBytes", this.dataSizeBytes);
+        document.append("totalIndexSizeBytes", this.totalIndexSizeBytes);
+        document.append("writeAmplification", getWriteAmplification());
+        document.append("indexes", this.indexes.stream().map(IndexUsage::toDocument).collect(Collectors.toList()));
+
+        return document;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%s (%s): %d documents, data %s, indexes %s, write amplification %.2fx%n",
+            this.collectionName, this.entityClass.getSimpleName(), this.count, IndexReport.bytes(this.dataSizeBytes),
+            IndexReport.bytes(this.totalIndexSizeBytes), getWriteAmplification()));
+
+        for (IndexUsage index : this.indexes) {
+            String accesses = index.getAccesses() == null ? "?" : String.valueOf(index.getAccesses());
+            builder.append(String.format("  %-30s %-6s %10s %10s accesses %8s/write %s%n", index.getName(),
+                index.isUnique() ? "unique" : "", IndexReport.bytes(index.getSizeBytes()), accesses,
+                IndexReport.bytes(index.getWriteCostBytes()), index.getFlags().isEmpty() ? "" : index.getFlags()));
+        }
+
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,242 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.analysis;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import io.seventyone.mongoutils.annotations.MongoIndex;
+
+/**
+ * Gathers {@code collStats}, {@code $indexStats} and {@code listIndexes} of annotated collections and maps the indexes
+ * back to their {@link io.seventyone.mongoutils.annotations.MongoIndex} annotations.
+ * <p>
+ * Access counts need MongoDB 3.2 or later, they are reported as unknown otherwise.
+ */
+public class IndexAnalyzer {
+
+    /**
+     * Default fraction of the collection data size an index may use before it's flagged as oversized.
+     */
+    public static final double DEFAULT_OVERSIZE_RATIO = 0.5;
+
+    private static final String ID_INDEX = "_id_";
+
+    private final MongoDatabase db;
+    private final double        oversizeRatio;
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param db the database
+     * @param oversizeRatio fraction of the collection data size an index may use before it's flagged as oversized
+     */
+    public IndexAnalyzer(MongoDatabase db, double oversizeRatio) {
+
+        if (oversizeRatio <= 0.0) {
+            String msg = String.format("Oversize ratio can't be '%s', must be positive", oversizeRatio);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.db = db;
+        this.oversizeRatio = oversizeRatio;
+    }
+
+    /**
+     * Analyzes the indexes of the given entity classes and their collection names.
+     */
+    public IndexReport analyze(Map<Class<?>, String> collections) {
+
+        List<CollectionReport> reports = Lists.newArrayList();
+        collections.forEach((entityClass, collectionName) -> reports.add(analyze(entityClass, collectionName)));
+        reports.sort(Comparator.comparing(CollectionReport::getCollectionName));
+
+        return new IndexReport(reports);
+    }
+
+    private CollectionReport analyze(Class<?> entityClass, String collectionName) {
+
+        MongoCollection<Document> collection = this.db.getCollection(collectionName);
+
+        Document stats;
+        try {
+            stats = this.db.runCommand(new Document("collStats", collectionName));
+        }
+        catch (MongoException e) {
+            // older servers fail for collections that don't exist yet
+            stats = new Document();
+        }
+        long count = longOf(stats, "count");
+        long dataSize = longOf(stats, "size");
+        Document indexSizes = stats.get("indexSizes") instanceof Document ? (Document) stats.get("indexSizes")
+            : new Document();
+
+        Map<String, Long> accesses = Maps.newHashMap();
+        Map<String, Date> accessesSince = Maps.newHashMap();
+        boolean accessesKnown = collectIndexStats(collection, accesses, accessesSince);
+
+        Map<String, MongoIndex> declared = Maps.newLinkedHashMap();
+        for (MongoIndex index : entityClass.getAnnotationsByType(MongoIndex.class)) {
+            declared.put(signature(new Document(index.key(), index.direction())), index);
+        }
+
+        List<IndexUsage> indexes = Lists.newArrayList();
+        Set<String> ttlIndexes = Sets.newHashSet();
+        Set<String> filteredIndexes = Sets.newHashSet();
+        for (Document index : collection.listIndexes()) {
+            String name = index.getString("name");
+            Document key = (Document) index.get("key");
+            boolean unique = Boolean.TRUE.equals(index.get("unique"));
+            boolean ttl = index.containsKey("expireAfterSeconds");
+            if (ttl) {
+                ttlIndexes.add(name);
+            }
+            if (Boolean.TRUE.equals(index.get("sparse")) || index.containsKey("partialFilterExpression")) {
+                filteredIndexes.add(name);
+            }
+            MongoIndex declaration = declared.remove(signature(key));
+            long size = longOf(indexSizes, name);
+            Long accessCount = accessesKnown ? accesses.getOrDefault(name, 0L) : null;
+
+            IndexUsage usage = new IndexUsage(name, key, unique, size, accessCount, accessesSince.get(name),
+                count == 0 ? 0 : size / count, declaration);
+
+            if (declaration == null && ID_INDEX.equals(name) == false) {
+                usage.flag(IndexFlag.UNDECLARED);
+            }
+            // TTL indexes are used by the server to remove expired documents, even if no query ever uses them
+            if (accessCount != null && accessCount == 0 && unique == false && ttl == false
+                && ID_INDEX.equals(name) == false) {
+                usage.flag(IndexFlag.UNUSED);
+            }
+            if (dataSize > 0 && size > this.oversizeRatio * dataSize) {
+                usage.flag(IndexFlag.OVERSIZED);
+            }
+
+            indexes.add(usage);
+        }
+
+        // An index whose keys are a prefix of another one only costs memory and writes, unless it enforces uniqueness,
+        // expires documents or either index only covers some of the documents
+        for (IndexUsage index : indexes) {
+            if (index.isUnique() || ID_INDEX.equals(index.getName()) || ttlIndexes.contains(index.getName())
+                || filteredIndexes.contains(index.getName())) {
+                continue;
+            }
+            for (IndexUsage other : indexes) {
+                if (other != index && filteredIndexes.contains(other.getName()) == false
+                    && isPrefix(index.getKey(), other.getKey())) {
+                    index.flag(IndexFlag.REDUNDANT_PREFIX);
+                    break;
+                }
+            }
+        }
+
+        for (MongoIndex declaration : declared.values()) {
+            Document key = new Document(declaration.key(), declaration.direction());
+            String name = declaration.key() + "_" + declaration.direction();
+            IndexUsage usage = new IndexUsage(name, key, declaration.unique(), 0, null, null, 0, declaration);
+            usage.flag(IndexFlag.MISSING);
+            indexes.add(usage);
+        }
+
+        return new CollectionReport(entityClass, collectionName, count, dataSize, longOf(stats, "totalIndexSize"),
+            indexes);
+    }
+
+    private static boolean collectIndexStats(MongoCollection<Document> collection, Map<String, Long> accesses,
+                                             Map<String, Date> accessesSince) {
+
+        List<Document> pipeline = Collections.singletonList(new Document("$indexStats", new Document()));
+        try {
+            for (Document stats : collection.aggregate(pipeline)) {
+                String name = stats.getString("name");
+                Document access = (Document) stats.get("accesses");
+                if (name == null || access == null) {
+                    continue;
+                }
+
+                // replica-set members report separately
+                accesses.merge(name, longOf(access, "ops"), Long::sum);
+                Date since = access.getDate("since");
+                if (since != null) {
+                    accessesSince.merge(name, since, (a, b) -> a.before(b) ? a : b);
+                }
+            }
+        }
+        catch (MongoException e) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if an index key is a proper prefix of another one. An index can be scanned in both directions, so a
+     * single ascending or descending key is a prefix of any key starting with the same field.
+     */
+    private static boolean isPrefix(Document key, Document otherKey) {
+
+        List<String> keys = keys(key);
+        List<String> otherKeys = keys(otherKey);
+        if (keys.isEmpty() || otherKeys.size() <= keys.size()) {
+            return false;
+        }
+
+        Map.Entry<String, Object> first = key.entrySet().iterator().next();
+        Object otherDirection = otherKey.get(first.getKey());
+        if (keys.size() == 1 && first.getValue() instanceof Number && otherDirection instanceof Number) {
+            return otherKey.keySet().iterator().next().equals(first.getKey());
+        }
+
+        return otherKeys.subList(0, keys.size()).equals(keys);
+    }
+
+    private static String signature(Document key) {
+        return String.join(",", keys(key));
+    }
+
+    private static List<String> keys(Document key) {
+
+        List<String> keys = Lists.newArrayList();
+        key.forEach((field, direction) -> {
+            Object normalized = direction instanceof Number ? (int) Math.signum(((Number) direction).doubleValue())
+                : direction;
+            keys.add(field + ":" + normalized);
+        });
+
+        return keys;
+    }
+
+    private static long longOf(Document document, String key) {
+        Object value = document.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.analysis;
+
+/**
+ * Findings of the {@link io.seventyone.mongoutils.analysis.IndexAnalyzer} for an index.
+ */
+public enum IndexFlag {
+
+    /**
+     * Not accessed since the server was restarted. Unique and TTL indexes are never flagged.
+     */
+    UNUSED,
+
+    /**
+     * The keys are a prefix of another index, which can serve the same queries. Unique, TTL, sparse and partial
+     * indexes are never flagged, neither are prefixes of sparse or partial indexes.
+     */
+    REDUNDANT_PREFIX,
+
+    /**
+     * Larger than the configured fraction of the collection data size.
+     */
+    OVERSIZED,
+
+    /**
+     * Exists in the database, but isn't declared by a {@link io.seventyone.mongoutils.annotations.MongoIndex}.
+     */
+    UNDECLARED,
+
+    /**
+     * Declared by a {@link io.seventyone.mongoutils.annotations.MongoIndex}, but doesn't exist in the database.
+     */
+    MISSING
+
+}
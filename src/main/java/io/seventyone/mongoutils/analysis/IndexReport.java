@@ -0,0 +1,87 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.analysis;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+
+/**
+ * Index footprint and usage of annotated collections, created by
+ * {@link io.seventyone.mongoutils.MongoService#analyzeIndexes(String)}.
+ * <p>
+ * {@link #toDocument()} is the machine-readable form, {@link #toString()} a readable summary.
+ */
+public class IndexReport {
+
+    private final List<CollectionReport> collections;
+
+    IndexReport(List<CollectionReport> collections) {
+        this.collections = collections;
+    }
+
+    /**
+     * The analyzed collections.
+     */
+    public List<CollectionReport> getCollections() {
+        return this.collections;
+    }
+
+    /**
+     * Returns true if any index was flagged.
+     */
+    public boolean hasFindings() {
+        // formatter: off
+        return this.collections
+            .stream()
+            .flatMap(c -> c.getIndexes().stream())
+            .anyMatch(i -> i.getFlags().isEmpty() == false);
+        // formatter: on
+    }
+
+    /**
+     * Returns the machine-readable form.
+     */
+    public Document toDocument() {
+        List<Document> collections =
+            this.collections.stream().map(CollectionReport::toDocument).collect(Collectors.toList());
+        return new Document("collections", collections);
+    }
+
+    /**
+     * Returns the machine-readable form as JSON.
+     */
+    public String toJson() {
+        return toDocument().toJson();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        this.collections.forEach(builder::append);
+        return builder.toString();
+    }
+
+    static String bytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        int unit = (63 - Long.numberOfLeadingZeros(bytes)) / 10;
+        return String.format("%.1f %siB", (double) bytes / (1L << (unit * 10)), "KMGTPE".charAt(unit - 1));
+    }
+
+}
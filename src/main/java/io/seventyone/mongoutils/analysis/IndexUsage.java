@@ -0,0 +1,139 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.analysis;
+
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+
+import io.seventyone.mongoutils.annotations.MongoIndex;
+
+/**
+ * Footprint and usage of a single index.
+ */
+public class IndexUsage {
+
+    private final String         name;
+    private final Document       key;
+    private final boolean        unique;
+    private final long           sizeBytes;
+    private final Long           accesses;
+    private final Date           accessesSince;
+    private final long           writeCostBytes;
+    private final MongoIndex     declaration;
+    private final Set<IndexFlag> flags = EnumSet.noneOf(IndexFlag.class);
+
+    IndexUsage(String name, Document key, boolean unique, long sizeBytes, Long accesses, Date accessesSince,
+               long writeCostBytes, MongoIndex declaration) {
+        this.name = name;
+        this.key = key;
+        this.unique = unique;
+        this.sizeBytes = sizeBytes;
+        this.accesses = accesses;
+        this.accessesSince = accessesSince;
+        this.writeCostBytes = writeCostBytes;
+        this.declaration = declaration;
+    }
+
+    void flag(IndexFlag flag) {
+        this.flags.add(flag);
+    }
+
+    /**
+     * The index name.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * The index key document.
+     */
+    public Document getKey() {
+        return this.key;
+    }
+
+    /**
+     * Whether the index is unique.
+     */
+    public boolean isUnique() {
+        return this.unique;
+    }
+
+    /**
+     * The index size in bytes.
+     */
+    public long getSizeBytes() {
+        return this.sizeBytes;
+    }
+
+    /**
+     * Number of accesses since {@link #getAccessesSince()}, null if the server doesn't provide index statistics.
+     */
+    public Long getAccesses() {
+        return this.accesses;
+    }
+
+    /**
+     * Start of the access counting, usually the server start, or null.
+     */
+    public Date getAccessesSince() {
+        return this.accessesSince;
+    }
+
+    /**
+     * Estimated bytes written to this index per inserted or deleted document, the average entry size.
+     */
+    public long getWriteCostBytes() {
+        return this.writeCostBytes;
+    }
+
+    /**
+     * The declaring annotation, or null if the index isn't declared.
+     */
+    public MongoIndex getDeclaration() {
+        return this.declaration;
+    }
+
+    /**
+     * The findings for this index.
+     */
+    public Set<IndexFlag> getFlags() {
+        return this.flags;
+    }
+
+    /**
+     * Returns the machine-readable form.
+     */
+    public Document toDocument() {
+
+        Document document = new Document("name", this.name);
+        document.append("key", this.key);
+        document.append("unique", this.unique);
+        document.append("sizeBytes", this.sizeBytes);
+        document.append("accesses", this.accesses);
+        document.append("accessesSince", this.accessesSince);
+        document.append("writeCostBytes", this.writeCostBytes);
+        document.append("declared", this.declaration != null);
+        document.append("flags", this.flags.stream().map(Enum::name).collect(Collectors.toList()));
+
+        return document;
+    }
+
+}
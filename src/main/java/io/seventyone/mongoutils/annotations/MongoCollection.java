@@ -20,6 +20,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import io.seventyone.mongoutils.migration.MongoUpcaster;
+
 /**
  * Marker annotation that can defines an enitity is needing/having a MongoDB-collection.
  */
@@ -39,4 +41,43 @@ public @interface MongoCollection {
      */
     boolean noAutoSetup() default false;
 
+    /**
+     * Creates the collection as capped collection during setup, if it doesn't exist yet.
+     * <p>
+     * Requires {@link #cappedSize()}. Documents of capped collections can't grow, so they can't store buckets of a
+     * {@link io.seventyone.mongoutils.bucket.BucketWriter}.
+     * <p>
+     * Default: false
+     */
+    boolean capped() default false;
+
+    /**
+     * Maximum size of a capped collection in bytes.
+     * <p>
+     * Default: 0
+     */
+    long cappedSize() default 0;
+
+    /**
+     * Maximum number of documents of a capped collection, 0 for no limit.
+     * <p>
+     * Default: 0
+     */
+    long cappedMax() default 0;
+
+    /**
+     * Current schema version of the documents.
+     * <p>
+     * Older documents are upgraded with the {@link #upcasters()} when read by
+     * {@link io.seventyone.mongoutils.MongoConverter}, documents without version have version 0.
+     * <p>
+     * Default: 0
+     */
+    int schemaVersion() default 0;
+
+    /**
+     * Upcasters for the version steps up to {@link #schemaVersion()}, one per step.
+     */
+    Class<? extends MongoUpcaster>[] upcasters() default {};
+
 }
@@ -66,4 +66,17 @@ public @interface MongoIndex {
      */
     boolean unique() default false;
 
+    /**
+     * Keeps an in-memory Bloom filter of the indexed values for
+     * {@link io.seventyone.mongoutils.MongoService#exists(Class, String, Object)}, only used for unique indexes.
+     * <p>
+     * The filter is built during setup and only knows about inserts made with
+     * {@link io.seventyone.mongoutils.MongoService#insert(Class, org.bson.Document)}. Every other write bypasses it,
+     * e.g. updates, replaces or inserts through {@link io.seventyone.mongoutils.MongoService#getCollection(Class)},
+     * materialized view and migration writes or other clients. Only use it if all values are inserted that way.
+     * <p>
+     * Default: false
+     */
+    boolean bloomFilter() default false;
+
 }
\ No newline at end of file
@@ -0,0 +1,134 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.bucket;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bson.Document;
+
+import com.google.common.collect.Lists;
+import com.mongodb.client.MongoCollection;
+
+import io.seventyone.mongoutils.MongoConverter;
+import io.seventyone.mongoutils.MongoService;
+
+/**
+ * Reads time-series events written by {@link io.seventyone.mongoutils.bucket.BucketWriter} and unpacks the buckets
+ * into entities.
+ *
+ * @param <T> the event type
+ */
+public class BucketReader<T> {
+
+    private final MongoCollection<Document> collection;
+    private final MongoConverter            converter;
+    private final Class<T>                  entityClass;
+    private final Function<T, Date>         timestampFunction;
+    private final long                      windowMillis;
+
+    /**
+     * Creates a bucket reader.
+     *
+     * @param service the service providing the collection
+     * @param converter the converter used for the events
+     * @param entityClass the event class, annotated with {@link io.seventyone.mongoutils.annotations.MongoCollection}
+     * @param timestampFunction provides the timestamp of an event
+     * @param windowMillis the time window used by the writer, 0 if it buckets by size only
+     */
+    public BucketReader(MongoService service, MongoConverter converter, Class<T> entityClass,
+                        Function<T, Date> timestampFunction, long windowMillis) {
+
+        if (windowMillis < 0) {
+            String msg = String.format("Bucket window can't be '%d', must not be negative", windowMillis);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.collection = service.getCollection(entityClass);
+        this.converter = converter;
+        this.entityClass = entityClass;
+        this.timestampFunction = timestampFunction;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Reads all events of a series with a timestamp in the range [from, to), ordered by bucket.
+     */
+    public List<T> read(String series, Date from, Date to) {
+
+        if (StringUtils.isBlank(series) || from == null || to == null) {
+            return null;
+        }
+
+        Document bucketRange = new Document("$lt", to);
+        if (this.windowMillis > 0) {
+            bucketRange.append("$gte", windowStart(from, this.windowMillis));
+        }
+
+        // formatter: off
+        Document filter = new Document(BucketWriter.SERIES, series)
+            .append(BucketWriter.BUCKET, bucketRange)
+            .append(BucketWriter.LAST, new Document("$gte", from));
+        // formatter: on
+
+        List<T> events = Lists.newArrayList();
+        for (T event : unpack(filter)) {
+            Date timestamp = this.timestampFunction.apply(event);
+            if (timestamp != null && timestamp.before(from) == false && timestamp.before(to)) {
+                events.add(event);
+            }
+        }
+
+        return events;
+    }
+
+    /**
+     * Reads all events of a series, ordered by bucket.
+     */
+    public List<T> readAll(String series) {
+
+        if (StringUtils.isBlank(series)) {
+            return null;
+        }
+
+        return unpack(new Document(BucketWriter.SERIES, series));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> unpack(Document filter) {
+
+        // A full window spills into several buckets with the same start, their _ids keep them in insertion order
+        Document sort = new Document(BucketWriter.BUCKET, 1).append("_id", 1);
+
+        List<T> events = Lists.newArrayList();
+        for (Document bucket : this.collection.find(filter).sort(sort)) {
+            List<Document> documents = (List<Document>) bucket.get(BucketWriter.EVENTS);
+            if (documents != null) {
+                events.addAll(this.converter.entitiesFrom(documents, this.entityClass));
+            }
+        }
+
+        return events;
+    }
+
+    static Date windowStart(Date timestamp, long windowMillis) {
+        long time = timestamp.getTime();
+        return new Date(time - Math.floorMod(time, windowMillis));
+    }
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.bucket;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bson.Document;
+
+import com.google.common.collect.Lists;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+
+import io.seventyone.mongoutils.MongoConverter;
+import io.seventyone.mongoutils.MongoService;
+
+/**
+ * Writes time-series events packed into bucket documents instead of one document per event.
+ * <p>
+ * A bucket holds up to {@code bucketSize} events of a series and, if a window is set, only events of one time window.
+ * Events are appended with {@code $push} upserts, a new bucket is created as soon as the current one is full.
+ * <p>
+ * Buckets are stored in the collection of the event class' {@link io.seventyone.mongoutils.annotations.MongoCollection}
+ * annotation and can be read with {@link io.seventyone.mongoutils.bucket.BucketReader}.
+ *
+ * @param <T> the event type
+ */
+public class BucketWriter<T> {
+
+    /**
+     * Field name of the series key.
+     */
+    public static final String SERIES = "series";
+
+    /**
+     * Field name of the bucket start, the window start or the timestamp of the first event without window.
+     */
+    public static final String BUCKET = "bucket";
+
+    /**
+     * Field name of the timestamp of the last event.
+     */
+    public static final String LAST = "last";
+
+    /**
+     * Field name of the event count.
+     */
+    public static final String COUNT = "count";
+
+    /**
+     * Field name of the event array.
+     */
+    public static final String EVENTS = "events";
+
+    private final MongoCollection<Document> collection;
+    private final MongoConverter            converter;
+    private final Function<T, Date>         timestampFunction;
+    private final int                       bucketSize;
+    private final long                      windowMillis;
+
+    /**
+     * Creates a bucket writer and ensures the bucket index.
+     *
+     * @param service the service providing the collection
+     * @param converter the converter used for the events
+     * @param entityClass the event class, annotated with a collection that isn't capped
+     * @param timestampFunction provides the timestamp of an event
+     * @param bucketSize the maximum number of events per bucket
+     * @param windowMillis the time window of a bucket, 0 to bucket by size only
+     */
+    public BucketWriter(MongoService service, MongoConverter converter, Class<T> entityClass,
+                        Function<T, Date> timestampFunction, int bucketSize, long windowMillis) {
+
+        if (bucketSize < 1) {
+            String msg = String.format("Bucket size can't be '%d', must be positive", bucketSize);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (windowMillis < 0) {
+            String msg = String.format("Bucket window can't be '%d', must not be negative", windowMillis);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // Appending events grows the buckets, capped collections reject documents growing in size
+        io.seventyone.mongoutils.annotations.MongoCollection annotation;
+        annotation = entityClass.getAnnotation(io.seventyone.mongoutils.annotations.MongoCollection.class);
+        if (annotation != null && annotation.capped()) {
+            String msg = String.format("Buckets of class '%s' can't be stored in a capped collection",
+                entityClass.getSimpleName());
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.collection = service.getCollection(entityClass);
+        this.converter = converter;
+        this.timestampFunction = timestampFunction;
+        this.bucketSize = bucketSize;
+        this.windowMillis = windowMillis;
+
+        this.collection.createIndex(new Document(SERIES, 1).append(BUCKET, 1));
+    }
+
+    /**
+     * Appends an event to the current bucket of a series.
+     */
+    public void write(String series, T event) {
+
+        if (StringUtils.isBlank(series) || event == null) {
+            return;
+        }
+
+        UpdateOneModel<Document> model = writeModel(series, event);
+        this.collection.updateOne(model.getFilter(), model.getUpdate(), model.getOptions());
+    }
+
+    /**
+     * Appends events to the buckets of a series in a single ordered bulk write.
+     */
+    public void writeAll(String series, List<T> events) {
+
+        if (StringUtils.isBlank(series) || events == null || events.isEmpty()) {
+            return;
+        }
+
+        List<WriteModel<Document>> models = Lists.newArrayList();
+        for (T event : events) {
+            if (event != null) {
+                models.add(writeModel(series, event));
+            }
+        }
+
+        if (models.isEmpty() == false) {
+            this.collection.bulkWrite(models);
+        }
+    }
+
+    private UpdateOneModel<Document> writeModel(String series, T event) {
+
+        Date timestamp = this.timestampFunction.apply(event);
+        if (timestamp == null) {
+            throw new IllegalArgumentException("Event timestamp can't be null");
+        }
+
+        Document filter = new Document(SERIES, series);
+        Document update = new Document();
+        if (this.windowMillis > 0) {
+            filter.append(BUCKET, BucketReader.windowStart(timestamp, this.windowMillis));
+        }
+        else {
+            update.append("$min", new Document(BUCKET, timestamp));
+        }
+        filter.append(COUNT, new Document("$lt", this.bucketSize));
+
+        update.append("$max", new Document(LAST, timestamp));
+        update.append("$inc", new Document(COUNT, 1));
+        update.append("$push", new Document(EVENTS, this.converter.documentFrom(event)));
+
+        return new UpdateOneModel<>(filter, update, new UpdateOptions().upsert(true));
+    }
+
+}
@@ -18,21 +18,52 @@
  */
 package io.seventyone.mongoutils.builder;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+
 import org.apache.commons.lang3.StringUtils;
 
+import com.google.common.collect.Lists;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+
+import io.seventyone.mongoutils.HedgedReader;
+import io.seventyone.mongoutils.MongoConverter;
 import io.seventyone.mongoutils.MongoService;
 import io.seventyone.mongoutils.MongoServiceImplementation;
+import io.seventyone.mongoutils.QueryCache;
+import io.seventyone.mongoutils.workload.WorkloadRecorder;
 
 /**
  * Convenience builder for {@link io.seventyone.mongoutils.MongoService} interface.
  */
 public class MongoServiceBuilder {
 
-    private String host = MongoService.DEFAULT_HOST;
-    private int    port = MongoService.DEFAULT_PORT;
-    private String dbName;
-    private String user;
-    private String password;
+    private final List<ServerAddress> members             = Lists.newArrayList();
+    private final List<String>        packageNames        = Lists.newArrayList();
+    private String                    host                = MongoService.DEFAULT_HOST;
+    private int                       port                = MongoService.DEFAULT_PORT;
+    private String                    dbName;
+    private String                    user;
+    private String                    password;
+    private boolean                   hedgedReads;
+    private long                      hedgeDelayMillis;
+    private double                    hedgePercentile;
+    private long                      hedgeMaxTimeMillis;
+    private ReadPreference            readPreference      = ReadPreference.primary();
+    private ReadPreference            hedgeReadPreference = ReadPreference.secondary();
+    private long                      bloomFilterBits     = MongoService.DEFAULT_BLOOM_FILTER_BITS;
+    private long                      bloomFilterCapacity = MongoService.DEFAULT_BLOOM_FILTER_CAPACITY;
+    private int                       warmUpConnections;
+    private MongoConverter            converter;
+    private int                       warmUpConversions;
+    private MongoConverter            resultConverter;
+    private Path                      workloadFile;
+    private int                       queryCacheEntries;
+    private long                      queryCacheTtlMillis;
 
     /**
      * Returns a new MongoServiceBuilder.
@@ -45,7 +76,63 @@ public class MongoServiceBuilder {
      * Creates a new MongoService instance based on the previous configuration.
      */
     public MongoService build() {
-        return new MongoServiceImplementation(this.host, this.port, this.dbName, this.user, this.password);
+
+        MongoClientOptions.Builder options = MongoClientOptions.builder();
+        if (this.warmUpConnections > 0) {
+            options.minConnectionsPerHost(this.warmUpConnections);
+        }
+
+        WorkloadRecorder recorder = null;
+        if (this.workloadFile != null) {
+            try {
+                recorder = new WorkloadRecorder(this.workloadFile, this.dbName);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            options.addCommandListener(recorder);
+        }
+
+        MongoServiceImplementation service;
+        if (this.members.isEmpty()) {
+            service = new MongoServiceImplementation(this.host, this.port, this.dbName, this.user, this.password,
+                options.build());
+        }
+        else {
+            service = new MongoServiceImplementation(this.members, this.dbName, this.user, this.password,
+                options.build());
+        }
+
+        service.provideBloomFilterBits(this.bloomFilterBits);
+        service.provideBloomFilterCapacity(this.bloomFilterCapacity);
+
+        if (this.hedgedReads) {
+            HedgedReader hedgedReader = new HedgedReader(this.hedgeDelayMillis, this.hedgePercentile,
+                this.hedgeMaxTimeMillis, this.readPreference, this.hedgeReadPreference);
+            service.provideHedgedReader(hedgedReader);
+        }
+
+        if (this.queryCacheEntries > 0) {
+            service.provideQueryCache(new QueryCache(this.queryCacheEntries, this.queryCacheTtlMillis));
+        }
+
+        if (recorder != null) {
+            service.provideWorkloadRecorder(recorder);
+        }
+
+        if (this.converter != null) {
+            service.provideConverter(this.converter, this.warmUpConversions);
+        }
+
+        if (this.resultConverter != null) {
+            service.provideResultConverter(this.resultConverter);
+        }
+
+        if (this.warmUpConnections > 0 || this.packageNames.isEmpty() == false) {
+            service.warmUp(this.warmUpConnections, this.packageNames);
+        }
+
+        return service;
     }
 
     /**
@@ -119,4 +206,245 @@ public class MongoServiceBuilder {
         return this;
     }
 
+    /**
+     * Adds a replica-set member (optional).
+     * <p>
+     * If any member is added the client connects to the replica-set instead of host / port.
+     */
+    public MongoServiceBuilder replicaSetMember(String host, int port) {
+
+        if (StringUtils.isBlank(host)) {
+            throw new IllegalArgumentException("Host can't be blank");
+        }
+
+        if (port < 1 || port > 65536) {
+            String msg = String.format("Port can't be '%d', must be in the range 1-65536", port);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.members.add(new ServerAddress(host, port));
+
+        return this;
+    }
+
+    /**
+     * Enables hedged reads with a fixed hedge delay (optional).
+     * <p>
+     * Finds slower than the delay are sent a second time with the hedge read preference, the first result wins.
+     */
+    public MongoServiceBuilder hedgedReads(long delayMillis) {
+
+        return hedgedReads(delayMillis, 0.0);
+    }
+
+    /**
+     * Enables hedged reads with a percentile-based hedge delay (optional).
+     * <p>
+     * Finds slower than the observed latency percentile (e.g. 0.95) are sent a second time with the hedge read
+     * preference, the first result wins. The delay must be positive, it's used until enough reads were observed and
+     * as lower bound afterwards.
+     */
+    public MongoServiceBuilder hedgedReads(long delayMillis, double percentile) {
+
+        if (delayMillis < 1) {
+            String msg = String.format("Hedge delay can't be '%d', must be positive", delayMillis);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (percentile < 0.0 || percentile >= 1.0) {
+            String msg = String.format("Hedge percentile can't be '%s', must be in the range 0.0-1.0", percentile);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.hedgedReads = true;
+        this.hedgeDelayMillis = delayMillis;
+        this.hedgePercentile = percentile;
+
+        return this;
+    }
+
+    /**
+     * Sets the max time of the requests of hedged reads, after which the server aborts them.
+     * <p>
+     * The cursor of the losing request is closed, but a query still computing its first batch can only be stopped by
+     * the max time.
+     * <p>
+     * Default: 0 (no limit)
+     */
+    public MongoServiceBuilder hedgeMaxTime(long maxTimeMillis) {
+
+        if (maxTimeMillis < 0) {
+            String msg = String.format("Hedge max time can't be '%d', must not be negative", maxTimeMillis);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.hedgeMaxTimeMillis = maxTimeMillis;
+
+        return this;
+    }
+
+    /**
+     * Sets the read preferences of the original and the hedging request of hedged reads.
+     * <p>
+     * Default: primary / secondary
+     */
+    public MongoServiceBuilder hedgeReadPreferences(ReadPreference readPreference,
+                                                    ReadPreference hedgeReadPreference) {
+
+        if (readPreference == null || hedgeReadPreference == null) {
+            throw new IllegalArgumentException("Read preferences can't be null");
+        }
+
+        this.readPreference = readPreference;
+        this.hedgeReadPreference = hedgeReadPreference;
+
+        return this;
+    }
+
+    /**
+     * Sets the size in bits of each Bloom filter of
+     * {@link io.seventyone.mongoutils.annotations.MongoIndex#bloomFilter()} indexes.
+     * <p>
+     * Default: 8388608 (1 MiB)
+     */
+    public MongoServiceBuilder bloomFilterBits(long bits) {
+
+        if (bits < 64) {
+            String msg = String.format("Bloom filter size can't be '%d' bits, must be at least 64", bits);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.bloomFilterBits = bits;
+
+        return this;
+    }
+
+    /**
+     * Sets the expected number of values of each Bloom filter of
+     * {@link io.seventyone.mongoutils.annotations.MongoIndex#bloomFilter()} indexes, used with the size to choose the
+     * number of hash functions. The number of documents is used instead if the collection is already larger.
+     * <p>
+     * Default: 1000000
+     */
+    public MongoServiceBuilder bloomFilterCapacity(long expectedValues) {
+
+        if (expectedValues < 1) {
+            String msg = String.format("Bloom filter capacity can't be '%d', must be positive", expectedValues);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.bloomFilterCapacity = expectedValues;
+
+        return this;
+    }
+
+    /**
+     * Sets up the collections of a package in the background after building, see
+     * {@link io.seventyone.mongoutils.MongoService#autoSetup(String)} (optional).
+     * <p>
+     * {@link io.seventyone.mongoutils.MongoService#ready()} completes when all packages are set up.
+     */
+    public MongoServiceBuilder autoSetup(String packageName) {
+
+        if (StringUtils.isBlank(packageName)) {
+            throw new IllegalArgumentException("Package name can't be blank");
+        }
+
+        this.packageNames.add(packageName);
+
+        return this;
+    }
+
+    /**
+     * Opens a minimum number of connections in the background after building and keeps them open (optional).
+     * <p>
+     * {@link io.seventyone.mongoutils.MongoService#ready()} completes when the connections are open.
+     * <p>
+     * At most the maximum connections per host of the driver (default: 100) can be opened.
+     */
+    public MongoServiceBuilder warmUp(int connections) {
+
+        int maxConnections = MongoClientOptions.builder().build().getConnectionsPerHost();
+        if (connections < 1 || connections > maxConnections) {
+            String msg = String.format("Warm-up connections can't be '%d', must be in the range 1-%d", connections,
+                maxConnections);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.warmUpConnections = connections;
+
+        return this;
+    }
+
+    /**
+     * Sets a converter whose readers and writers are built for every auto-setup collection class (optional).
+     *
+     * @param converter the converter
+     * @param conversions number of synthetic conversions per class, 0 to only build the readers and writers
+     */
+    public MongoServiceBuilder converter(MongoConverter converter, int conversions) {
+
+        if (conversions < 0) {
+            String msg = String.format("Warm-up conversions can't be '%d', must not be negative", conversions);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.converter = converter;
+        this.warmUpConversions = conversions;
+
+        return this;
+    }
+
+    /**
+     * Sets the converter used for aggregation results (optional, default: a new
+     * {@link io.seventyone.mongoutils.MongoConverterImplementation}).
+     * <p>
+     * The converter set by {@link #converter(MongoConverter, int)} is only warmed up, pass it here as well to use it
+     * for results.
+     */
+    public MongoServiceBuilder resultConverter(MongoConverter converter) {
+        this.resultConverter = converter;
+
+        return this;
+    }
+
+    /**
+     * Records all commands sent to the database into a file for replay with
+     * {@link io.seventyone.mongoutils.workload.WorkloadReplayer} (optional).
+     */
+    public MongoServiceBuilder recordWorkload(Path file) {
+
+        if (file == null) {
+            throw new IllegalArgumentException("Workload file can't be null");
+        }
+
+        this.workloadFile = file;
+
+        return this;
+    }
+
+    /**
+     * Enables the result cache for aggregations and counts (optional).
+     *
+     * @param maxEntries the maximum number of cached results
+     * @param ttlMillis the time a result is cached
+     */
+    public MongoServiceBuilder queryCache(int maxEntries, long ttlMillis) {
+
+        if (maxEntries < 1) {
+            String msg = String.format("Max entries can't be '%d', must be positive", maxEntries);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (ttlMillis < 1) {
+            String msg = String.format("TTL can't be '%d', must be positive", ttlMillis);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.queryCacheEntries = maxEntries;
+        this.queryCacheTtlMillis = ttlMillis;
+
+        return this;
+    }
+
 }
@@ -0,0 +1,235 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.migration;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.result.UpdateResult;
+
+import io.seventyone.mongoutils.MongoConverter;
+import io.seventyone.mongoutils.MongoService;
+
+/**
+ * Persists documents upgraded by {@link io.seventyone.mongoutils.MongoConverter} in the background, throttled to a
+ * maximum rate.
+ * <p>
+ * Only the collection and _id of an upgraded document are queued, the documents passed to the converter might be
+ * partial, e.g. projections or aggregation results. The writer re-reads the stored document, upgrades it and writes
+ * only the changed fields, filtered by the complete re-read document. A document changed in the meantime doesn't
+ * match and is skipped, it's upgraded again on a later read. Upgrades arriving while the queue is full are dropped.
+ */
+public class MigrationWriter implements UpcastListener, AutoCloseable {
+
+    private static final String ID = "_id";
+
+    private final MongoService                service;
+    private final MongoConverter              converter;
+    private final BlockingQueue<PendingWrite> queue;
+    private final long                        intervalNanos;
+    private final Thread                      thread;
+    private final LongAdder                   written = new LongAdder();
+    private final LongAdder                   skipped = new LongAdder();
+    private final LongAdder                   dropped = new LongAdder();
+    private final LongAdder                   failed  = new LongAdder();
+    private volatile boolean                  running = true;
+
+    /**
+     * Creates and starts a migration writer.
+     *
+     * @param service the service providing the collections
+     * @param converter the converter upgrading the documents
+     * @param maxWritesPerSecond the maximum number of documents written per second
+     * @param queueSize the maximum number of pending writes
+     */
+    public MigrationWriter(MongoService service, MongoConverter converter, int maxWritesPerSecond, int queueSize) {
+
+        if (maxWritesPerSecond < 1) {
+            String msg = String.format("Writes per second can't be '%d', must be positive", maxWritesPerSecond);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (queueSize < 1) {
+            String msg = String.format("Queue size can't be '%d', must be positive", queueSize);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.service = service;
+        this.converter = converter;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / maxWritesPerSecond;
+
+        this.thread = new Thread(this::run, "mongo-utils-migration-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void upcasted(Class<?> entityClass, Document original, Document upgraded) {
+
+        if (this.running == false || original.get(ID) == null) {
+            return;
+        }
+
+        if (this.queue.offer(new PendingWrite(entityClass, original.get(ID))) == false) {
+            this.dropped.increment();
+        }
+    }
+
+    private void run() {
+
+        while (this.running) {
+            PendingWrite write;
+            try {
+                write = this.queue.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                if (migrate(write)) {
+                    this.written.increment();
+                }
+                else {
+                    this.skipped.increment();
+                }
+            }
+            catch (RuntimeException e) {
+                this.failed.increment();
+            }
+
+            long remaining = this.intervalNanos - (System.nanoTime() - start);
+            if (remaining > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean migrate(PendingWrite write) {
+
+        MongoCollection<Document> collection = this.service.getCollection(write.entityClass);
+        Document stored = collection.find(new Document(ID, write.id)).first();
+        Document upgraded = this.converter.upcast(stored, write.entityClass);
+        if (upgraded == null) {
+            return false;
+        }
+
+        // The complete stored document as filter only matches if nobody changed it in the meantime, fields added by
+        // the upgrade must not have been added concurrently either
+        Document filter = new Document(stored);
+        Document set = new Document();
+        Document unset = new Document();
+        for (Map.Entry<String, Object> field : upgraded.entrySet()) {
+            if (stored.containsKey(field.getKey()) == false) {
+                filter.append(field.getKey(), new Document("$exists", false));
+                set.append(field.getKey(), field.getValue());
+            }
+            else if (Objects.equals(stored.get(field.getKey()), field.getValue()) == false) {
+                set.append(field.getKey(), field.getValue());
+            }
+        }
+        for (String key : stored.keySet()) {
+            if (upgraded.containsKey(key) == false) {
+                unset.append(key, "");
+            }
+        }
+
+        Document update = new Document();
+        if (set.isEmpty() == false) {
+            update.append("$set", set);
+        }
+        if (unset.isEmpty() == false) {
+            update.append("$unset", unset);
+        }
+
+        UpdateResult result = collection.updateOne(filter, update);
+
+        return result.getMatchedCount() > 0;
+    }
+
+    /**
+     * Number of upgraded documents written.
+     */
+    public long getWritten() {
+        return this.written.sum();
+    }
+
+    /**
+     * Number of upgraded documents not written because they were changed, upgraded or deleted in the meantime.
+     */
+    public long getSkipped() {
+        return this.skipped.sum();
+    }
+
+    /**
+     * Number of upgraded documents dropped because the queue was full.
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Number of failed writes.
+     */
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    /**
+     * Number of pending writes.
+     */
+    public int getPending() {
+        return this.queue.size();
+    }
+
+    /**
+     * Stops the writer, pending writes are discarded.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        this.thread.interrupt();
+        this.queue.clear();
+    }
+
+    private static class PendingWrite {
+
+        private final Class<?> entityClass;
+        private final Object   id;
+
+        PendingWrite(Class<?> entityClass, Object id) {
+            this.entityClass = entityClass;
+            this.id = id;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.migration;
+
+import org.bson.Document;
+
+/**
+ * Upgrades a document of an entity class by one schema version step.
+ * <p>
+ * Upcasters are declared with {@link io.seventyone.mongoutils.annotations.MongoCollection#upcasters()} or registered
+ * with {@link io.seventyone.mongoutils.MongoConverter#registerUpcaster(Class, MongoUpcaster)} and applied by
+ * {@link io.seventyone.mongoutils.MongoConverter#entityFrom(Document, Class)} to documents of an older version.
+ * Declared upcasters need a default constructor.
+ */
+public interface MongoUpcaster {
+
+    /**
+     * The schema version this upcaster upgrades from, the result has version {@code fromVersion() + 1}.
+     * <p>
+     * Documents without a version have version 0.
+     */
+    int fromVersion();
+
+    /**
+     * Upgrades the document, which may be modified and returned.
+     */
+    Document upcast(Document document);
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.migration;
+
+import org.bson.Document;
+
+/**
+ * Gets notified by {@link io.seventyone.mongoutils.MongoConverter} about documents upgraded to the current schema
+ * version.
+ */
+public interface UpcastListener {
+
+    /**
+     * Called after a document was upgraded.
+     * <p>
+     * The document isn't necessarily the complete stored document, e.g. it might come from a projection, an
+     * aggregation or a copy, so it must not be written back as is.
+     *
+     * @param entityClass the entity class
+     * @param original the document as passed to the converter
+     * @param upgraded the upgraded document, including the current schema version
+     */
+    void upcasted(Class<?> entityClass, Document original, Document upgraded);
+
+}
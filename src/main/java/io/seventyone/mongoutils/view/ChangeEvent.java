@@ -0,0 +1,95 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.view;
+
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+
+/**
+ * A change of a source document, decoded from the oplog.
+ *
+ * @param <T> the source entity type
+ */
+public class ChangeEvent<T> {
+
+    /**
+     * Type of a change.
+     */
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+
+    private final Type          type;
+    private final Object        id;
+    private final T             entity;
+    private final T             previous;
+    private final BsonTimestamp timestamp;
+    private final Document      entry;
+
+    public ChangeEvent(Type type, Object id, T entity, T previous, BsonTimestamp timestamp, Document entry) {
+        this.type = type;
+        this.id = id;
+        this.entity = entity;
+        this.previous = previous;
+        this.timestamp = timestamp;
+        this.entry = entry;
+    }
+
+    /**
+     * The type of the change.
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * The _id of the changed document.
+     */
+    public Object getId() {
+        return this.id;
+    }
+
+    /**
+     * The current entity, null for deletes.
+     */
+    public T getEntity() {
+        return this.entity;
+    }
+
+    /**
+     * The entity as it was last reduced, null for inserts or if the document wasn't reduced before.
+     */
+    public T getPrevious() {
+        return this.previous;
+    }
+
+    /**
+     * The oplog timestamp of the change, null for the initial load.
+     */
+    public BsonTimestamp getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * The raw oplog entry, null for the initial load.
+     */
+    public Document getEntry() {
+        return this.entry;
+    }
+
+}
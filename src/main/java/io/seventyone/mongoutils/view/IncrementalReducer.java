@@ -0,0 +1,41 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.view;
+
+import java.util.List;
+
+import org.bson.Document;
+
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Incrementally updates a materialized view for a single change of its source collection.
+ * <p>
+ * Every change carries the current and the previously reduced entity, so a reducer can remove the old contribution
+ * and add the new one, e.g. {@code $inc} totals of the previous and the current customer. A change is delivered once,
+ * only a change interrupted between the view writes and the bookkeeping of the view is delivered again on restart.
+ *
+ * @param <T> the source entity type
+ */
+@FunctionalInterface
+public interface IncrementalReducer<T> {
+
+    /**
+     * Returns the writes to apply to the target collection for a change, may be empty.
+     */
+    List<WriteModel<Document>> reduce(ChangeEvent<T> event);
+
+}
@@ -0,0 +1,458 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.view;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+
+import io.seventyone.mongoutils.MongoConverter;
+import io.seventyone.mongoutils.MongoService;
+
+/**
+ * Incrementally maintained materialized view of a source collection.
+ * <p>
+ * Tails the oplog of the source collection in the background, decodes every change to an entity and applies the
+ * writes returned by the {@link io.seventyone.mongoutils.view.IncrementalReducer} to the target collection. On the
+ * first start all existing source documents are reduced as inserts, ordered by _id.
+ * <p>
+ * The last reduced state of every source document is kept in the {@link #SHADOW_COLLECTION}, it's passed to the
+ * reducer as previous entity and used to skip changes already applied. Together with the checkpointed oplog and
+ * initial load position a restarted view resumes where it stopped without reducing a change twice, only a change
+ * interrupted between its view writes and its shadow write is reduced again.
+ * <p>
+ * If the view was stopped longer than the oplog window, its position is no longer in the oplog. It stops then with a
+ * {@link #getLastFailure()} and has to be {@link #reset()}.
+ * <p>
+ * Requires a replica set, a local single-node replica set is sufficient.
+ *
+ * @param <T> the source entity type
+ */
+public class MaterializedView<T> implements AutoCloseable {
+
+    /**
+     * Collection storing the oplog and initial load position of every view, by view name.
+     */
+    public static final String CHECKPOINT_COLLECTION = "materializedViewCheckpoints";
+
+    /**
+     * Collection storing the last reduced state of every source document, by view name and source _id.
+     */
+    public static final String SHADOW_COLLECTION = "materializedViewShadows";
+
+    private static final String ID        = "_id";
+    private static final String TS        = "ts";
+    private static final String LOADING   = "loading";
+    private static final String LAST_ID   = "lastId";
+    private static final String VIEW      = "view";
+    private static final String SOURCE_ID = "source";
+    private static final String DOCUMENT  = "document";
+
+    private static final int  CHECKPOINT_EVERY = 100;
+    private static final long RETRY_MILLIS     = 1000L;
+
+    private final MongoService              service;
+    private final MongoConverter            converter;
+    private final String                    name;
+    private final Class<T>                  sourceClass;
+    private final MongoCollection<Document> source;
+    private final MongoCollection<Document> target;
+    private final MongoCollection<Document> checkpoints;
+    private final MongoCollection<Document> shadows;
+    private final IncrementalReducer<T>     reducer;
+    private final LongAdder                 applied = new LongAdder();
+    private final LongAdder                 skipped = new LongAdder();
+
+    private Thread                         thread;
+    private volatile boolean               running;
+    private volatile MongoCursor<Document> cursor;
+    private volatile BsonTimestamp         lastTimestamp;
+    private volatile boolean               loading;
+    private volatile Object                lastLoadedId;
+    private volatile RuntimeException      lastFailure;
+
+    /**
+     * Creates a materialized view, call {@link #start()} to start maintaining it.
+     *
+     * @param service the service providing the collections
+     * @param converter the converter used to decode source documents
+     * @param name the unique name of the view, used for its checkpoint and shadows
+     * @param sourceClass the source entity class, annotated with
+     *        {@link io.seventyone.mongoutils.annotations.MongoCollection}
+     * @param targetClass the view class, annotated with {@link io.seventyone.mongoutils.annotations.MongoCollection}
+     * @param reducer the reducer
+     */
+    public MaterializedView(MongoService service, MongoConverter converter, String name, Class<T> sourceClass,
+                            Class<?> targetClass, IncrementalReducer<T> reducer) {
+
+        if (StringUtils.isBlank(name)) {
+            throw new IllegalArgumentException("View name can't be blank");
+        }
+
+        this.service = service;
+        this.converter = converter;
+        this.name = name;
+        this.sourceClass = sourceClass;
+        this.source = service.getCollection(sourceClass);
+        this.target = service.getCollection(targetClass);
+        this.checkpoints = service.getCollection(CHECKPOINT_COLLECTION);
+        this.shadows = service.getCollection(SHADOW_COLLECTION);
+        this.reducer = reducer;
+    }
+
+    /**
+     * Starts maintaining the view in the background.
+     */
+    public synchronized void start() {
+
+        if (this.thread != null && this.thread.isAlive()) {
+            return;
+        }
+
+        this.running = true;
+        this.thread = new Thread(this::run, "mongo-utils-view-" + this.name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void run() {
+
+        while (this.running) {
+            try {
+                if (this.lastTimestamp == null) {
+                    loadCheckpoint();
+                }
+                if (this.loading) {
+                    initialLoad();
+                }
+                if (this.loading == false) {
+                    tail();
+                }
+            }
+            catch (RuntimeException e) {
+                if (this.running == false) {
+                    return;
+                }
+                this.lastFailure = e;
+            }
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(RETRY_MILLIS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reduces all existing source documents as inserts, resuming after the last loaded _id.
+     */
+    private void initialLoad() {
+
+        Document filter = new Document();
+        if (this.lastLoadedId != null) {
+            filter.append(ID, new Document("$gt", this.lastLoadedId));
+        }
+
+        int unsaved = 0;
+        try (MongoCursor<Document> cursor = this.source.find(filter).sort(new Document(ID, 1)).iterator()) {
+            while (cursor.hasNext()) {
+                if (this.running == false) {
+                    break;
+                }
+
+                Document document = cursor.next();
+                apply(ChangeEvent.Type.INSERT, document.get(ID), document, null, null);
+                this.lastLoadedId = document.get(ID);
+
+                if (++unsaved >= CHECKPOINT_EVERY) {
+                    saveCheckpoint();
+                    unsaved = 0;
+                }
+            }
+        }
+
+        if (this.running) {
+            this.loading = false;
+            this.lastLoadedId = null;
+            saveCheckpoint();
+        }
+        else if (unsaved > 0) {
+            saveCheckpoint();
+        }
+    }
+
+    private void tail() {
+
+        // Entries older than the oldest one were removed from the capped oplog, the view can't catch up anymore
+        if (oplogTimestamp(1).compareTo(this.lastTimestamp) > 0) {
+            String msg = String.format("Oplog position of view '%s' was removed from the oplog, changes were lost. "
+                + "Clear the target collection, reset() and start() the view again", this.name);
+            this.lastFailure = new IllegalStateException(msg);
+            this.running = false;
+            return;
+        }
+
+        String namespace = this.source.getNamespace().getFullName();
+        Document filter = new Document(TS, new Document("$gt", this.lastTimestamp)).append("ns", namespace);
+
+        // formatter: off
+        MongoCursor<Document> cursor = this.service.getOplog()
+            .find(filter)
+            .cursorType(CursorType.TailableAwait)
+            .noCursorTimeout(true)
+            .oplogReplay(true)
+            .iterator();
+        // formatter: on
+
+        this.cursor = cursor;
+        try {
+            int unsaved = 0;
+            while (this.running) {
+                Document entry = cursor.tryNext();
+                if (entry == null) {
+                    if (unsaved > 0) {
+                        saveCheckpoint();
+                        unsaved = 0;
+                    }
+                    if (cursor.getServerCursor() == null) {
+                        // A dead tailable cursor is reopened after the retry delay
+                        return;
+                    }
+                    continue;
+                }
+
+                applyEntry(entry);
+                this.lastTimestamp = (BsonTimestamp) entry.get(TS);
+
+                if (++unsaved >= CHECKPOINT_EVERY) {
+                    saveCheckpoint();
+                    unsaved = 0;
+                }
+            }
+
+            if (unsaved > 0) {
+                saveCheckpoint();
+            }
+        }
+        finally {
+            this.cursor = null;
+            cursor.close();
+        }
+    }
+
+    private void applyEntry(Document entry) {
+
+        String operation = entry.getString("op");
+        Document object = (Document) entry.get("o");
+        BsonTimestamp timestamp = (BsonTimestamp) entry.get(TS);
+
+        if ("i".equals(operation)) {
+            apply(ChangeEvent.Type.INSERT, object.get(ID), object, timestamp, entry);
+        }
+        else if ("u".equals(operation)) {
+            // Update entries only contain the modification, the current document is looked up
+            Object id = ((Document) entry.get("o2")).get(ID);
+            Document current = this.source.find(new Document(ID, id)).first();
+            apply(ChangeEvent.Type.UPDATE, id, current, timestamp, entry);
+        }
+        else if ("d".equals(operation)) {
+            apply(ChangeEvent.Type.DELETE, object.get(ID), null, timestamp, entry);
+        }
+    }
+
+    private void apply(ChangeEvent.Type type, Object id, Document current, BsonTimestamp timestamp, Document entry) {
+
+        Document shadowId = new Document(VIEW, this.name).append(SOURCE_ID, id);
+        Document shadow = this.shadows.find(new Document(ID, shadowId)).first();
+
+        if (isApplied(type, shadow, current, timestamp)) {
+            this.skipped.increment();
+            return;
+        }
+
+        Document previousDocument = shadow == null ? null : (Document) shadow.get(DOCUMENT);
+        T previous = this.converter.entityFrom(previousDocument, this.sourceClass);
+        T entity = this.converter.entityFrom(current, this.sourceClass);
+
+        List<WriteModel<Document>> writes = this.reducer.reduce(new ChangeEvent<>(type, id, entity, previous,
+            timestamp, entry));
+        if (writes != null && writes.isEmpty() == false) {
+            this.target.bulkWrite(writes);
+        }
+
+        if (type == ChangeEvent.Type.DELETE) {
+            this.shadows.deleteOne(new Document(ID, shadowId));
+        }
+        else {
+            // The initial load is recorded with the oplog position it started at
+            BsonTimestamp applied = timestamp != null ? timestamp : this.lastTimestamp;
+            Document state = new Document(ID, shadowId).append(TS, applied).append(DOCUMENT, current);
+            this.shadows.replaceOne(new Document(ID, shadowId), state, new UpdateOptions().upsert(true));
+        }
+
+        this.applied.increment();
+    }
+
+    /**
+     * Checks if a change was already reduced, e.g. delivered again after a restart or seen by the initial load.
+     */
+    private static boolean isApplied(ChangeEvent.Type type, Document shadow, Document current,
+                                     BsonTimestamp timestamp) {
+
+        switch (type) {
+            case INSERT:
+                return shadow != null;
+            case UPDATE:
+                // A deleted document is handled by the following delete
+                if (current == null) {
+                    return true;
+                }
+                BsonTimestamp shadowTimestamp = shadow == null ? null : (BsonTimestamp) shadow.get(TS);
+                return shadowTimestamp != null && timestamp != null && shadowTimestamp.compareTo(timestamp) >= 0;
+            case DELETE:
+                return shadow == null;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the timestamp of the oldest (1) or latest (-1) oplog entry.
+     */
+    private BsonTimestamp oplogTimestamp(int order) {
+
+        Document entry = this.service.getOplog().find().sort(new Document("$natural", order)).limit(1).first();
+        if (entry == null) {
+            throw new IllegalStateException("No oplog found, materialized views require a replica set");
+        }
+
+        return (BsonTimestamp) entry.get(TS);
+    }
+
+    private void loadCheckpoint() {
+
+        Document checkpoint = this.checkpoints.find(new Document(ID, this.name)).first();
+        if (checkpoint == null) {
+            // The position is taken before loading, so changes during the load are delivered again while tailing
+            this.lastTimestamp = oplogTimestamp(-1);
+            this.loading = true;
+            this.lastLoadedId = null;
+            saveCheckpoint();
+            return;
+        }
+
+        this.lastLoadedId = checkpoint.get(LAST_ID);
+        this.loading = checkpoint.getBoolean(LOADING, false);
+        this.lastTimestamp = (BsonTimestamp) checkpoint.get(TS);
+    }
+
+    private void saveCheckpoint() {
+
+        Document checkpoint = new Document(ID, this.name).append(TS, this.lastTimestamp);
+        if (this.loading) {
+            checkpoint.append(LOADING, true).append(LAST_ID, this.lastLoadedId);
+        }
+
+        this.checkpoints.replaceOne(new Document(ID, this.name), checkpoint, new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Number of changes applied to the view, initial load included.
+     */
+    public long getApplied() {
+        return this.applied.sum();
+    }
+
+    /**
+     * Number of changes skipped because they were already applied.
+     */
+    public long getSkipped() {
+        return this.skipped.sum();
+    }
+
+    /**
+     * The oplog position of the last processed change, or null.
+     */
+    public BsonTimestamp getLastTimestamp() {
+        return this.lastTimestamp;
+    }
+
+    /**
+     * The last failure while maintaining the view, or null. Failed changes are retried.
+     */
+    public RuntimeException getLastFailure() {
+        return this.lastFailure;
+    }
+
+    /**
+     * Removes the checkpoint and the shadows of a stopped view, so it's rebuilt by an initial load on the next start.
+     * <p>
+     * Clear the target collection before, e.g. after the view stopped because its oplog position was removed from the
+     * oplog.
+     */
+    public synchronized void reset() {
+
+        if (this.running) {
+            throw new IllegalStateException("A running view can't be reset, close it first");
+        }
+
+        this.checkpoints.deleteOne(new Document(ID, this.name));
+        this.shadows.deleteMany(new Document(ID + "." + VIEW, this.name));
+
+        this.lastTimestamp = null;
+        this.loading = false;
+        this.lastLoadedId = null;
+        this.lastFailure = null;
+    }
+
+    /**
+     * Stops maintaining the view, it can be resumed later from its checkpoint.
+     */
+    @Override
+    public synchronized void close() {
+
+        this.running = false;
+
+        MongoCursor<Document> cursor = this.cursor;
+        if (cursor != null) {
+            try {
+                cursor.close();
+            }
+            catch (RuntimeException e) {
+                // the tailing thread closes the cursor as well
+            }
+        }
+
+        if (this.thread != null) {
+            this.thread.interrupt();
+            this.thread = null;
+        }
+    }
+
+}
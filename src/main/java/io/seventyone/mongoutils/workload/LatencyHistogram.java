@@ -0,0 +1,102 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.workload;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe latency histogram with power-of-two microsecond buckets.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder       total  = new LongAdder();
+    private final LongAdder       sum    = new LongAdder();
+
+    /**
+     * Records a latency.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos));
+        this.counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(micros));
+        this.total.increment();
+        this.sum.add(micros);
+    }
+
+    /**
+     * Number of recorded latencies.
+     */
+    public long getCount() {
+        return this.total.sum();
+    }
+
+    /**
+     * Mean latency in microseconds, 0.0 if nothing was recorded.
+     */
+    public double getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0.0 : (double) this.sum.sum() / count;
+    }
+
+    /**
+     * Upper bound in microseconds of the bucket containing the percentile, e.g. 0.99.
+     */
+    public long getPercentileMicros(double percentile) {
+
+        long count = getCount();
+        if (count == 0) {
+            return 0L;
+        }
+
+        long rank = (long) Math.ceil(percentile * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += this.counts.get(bucket);
+            if (seen >= rank) {
+                return upperBound(bucket);
+            }
+        }
+
+        return upperBound(BUCKETS - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == 0 ? 0L : (1L << bucket) - 1;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("count=%d mean=%.1fus p50=%dus p90=%dus p99=%dus p999=%dus%n", getCount(),
+            getMeanMicros(), getPercentileMicros(0.5), getPercentileMicros(0.9), getPercentileMicros(0.99),
+            getPercentileMicros(0.999)));
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            long bucketCount = this.counts.get(bucket);
+            if (bucketCount > 0) {
+                builder.append(String.format("  <= %10dus: %d%n", upperBound(bucket), bucketCount));
+            }
+        }
+
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.workload;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Result of a {@link io.seventyone.mongoutils.workload.WorkloadReplayer} run.
+ */
+public class ReplayReport {
+
+    private final LatencyHistogram              latencies  = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> operations = new ConcurrentHashMap<>();
+    private final LongAdder                     errors     = new LongAdder();
+    private long                                elapsedNanos;
+
+    void record(String operation, long nanos) {
+        this.latencies.record(nanos);
+        this.operations.computeIfAbsent(operation, o -> new LatencyHistogram()).record(nanos);
+    }
+
+    void recordError() {
+        this.errors.increment();
+    }
+
+    void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Number of executed operations, failed ones included.
+     */
+    public long getOperations() {
+        return this.latencies.getCount();
+    }
+
+    /**
+     * Number of failed operations.
+     */
+    public long getErrors() {
+        return this.errors.sum();
+    }
+
+    /**
+     * Wall-clock duration of the replay in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.elapsedNanos);
+    }
+
+    /**
+     * Executed operations per second.
+     */
+    public double getThroughput() {
+        return this.elapsedNanos == 0 ? 0.0 : getOperations() * 1e9 / this.elapsedNanos;
+    }
+
+    /**
+     * Latencies of all operations.
+     */
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
+    /**
+     * Latencies by operation name.
+     */
+    public Map<String, LatencyHistogram> getOperationLatencies() {
+        return this.operations;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("operations=%d errors=%d elapsed=%dms throughput=%.1f ops/s%n", getOperations(),
+            getErrors(), getElapsedMillis(), getThroughput()));
+        builder.append("all: ").append(this.latencies);
+        this.operations.forEach((operation, histogram) -> builder.append(operation).append(": ").append(histogram));
+
+        return builder.toString();
+    }
+
+}
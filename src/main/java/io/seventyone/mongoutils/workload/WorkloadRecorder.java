@@ -0,0 +1,202 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.workload;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+
+import com.google.common.collect.ImmutableSet;
+import com.mongodb.event.CommandEvent;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+/**
+ * Records the commands sent by a MongoDB client into a gzipped file, one JSON document per line, for replay with
+ * {@link io.seventyone.mongoutils.workload.WorkloadReplayer}.
+ * <p>
+ * Register the recorder as command listener in the client options, so every command is recorded, whether it's sent
+ * by a {@link io.seventyone.mongoutils.MongoService} method or a collection it returned. Connection handshakes,
+ * authentication and cursor follow-ups ({@code getMore}, {@code killCursors}) aren't recorded, a replayed find or
+ * aggregation iterates its whole cursor instead.
+ * <p>
+ * Each line contains the command name, collection, command, start offset and duration in microseconds and the
+ * recording thread, so the replay can keep the commands of each thread in order. Recording stops on the first I/O
+ * error, see {@link #getFailure()}.
+ */
+public class WorkloadRecorder implements CommandListener, AutoCloseable {
+
+    static final String OPERATION  = "op";
+    static final String COLLECTION = "c";
+    static final String PARAMETERS = "p";
+    static final String OFFSET     = "t";
+    static final String DURATION   = "d";
+    static final String THREAD     = "th";
+
+    private static final Set<String> IGNORED_COMMANDS = ImmutableSet.of("ismaster", "buildinfo", "getnonce",
+        "authenticate", "saslstart", "saslcontinue", "getlasterror", "getmore", "killcursors");
+
+    private final Writer                       writer;
+    private final String                       databaseName;
+    private final long                         startNanos = System.nanoTime();
+    private final Map<Integer, StartedCommand> started    = new ConcurrentHashMap<>();
+    private final LongAdder                    recorded   = new LongAdder();
+    private volatile Exception                 failure;
+
+    /**
+     * Creates a recorder writing the commands of all databases to a file, an existing file is overwritten.
+     */
+    public WorkloadRecorder(Path file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * Creates a recorder writing the commands of a database to a file, an existing file is overwritten.
+     *
+     * @param file the file
+     * @param databaseName the database whose commands are recorded, null for all databases
+     */
+    public WorkloadRecorder(Path file, String databaseName) throws IOException {
+        GZIPOutputStream output = new GZIPOutputStream(Files.newOutputStream(file));
+        this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        this.databaseName = databaseName;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+
+        if (this.failure != null || IGNORED_COMMANDS.contains(event.getCommandName().toLowerCase())) {
+            return;
+        }
+
+        if (this.databaseName != null && this.databaseName.equals(event.getDatabaseName()) == false) {
+            return;
+        }
+
+        // The command might be backed by a buffer that's released after sending, so it's copied
+        BsonDocument command = event.getCommand().clone();
+        this.started.put(event.getRequestId(), new StartedCommand(command, System.nanoTime()));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        finished(event, event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        finished(event, event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    private void finished(CommandEvent event, long durationNanos) {
+
+        StartedCommand command = this.started.remove(event.getRequestId());
+        if (command == null) {
+            return;
+        }
+
+        BsonValue collection = command.command.get(event.getCommandName());
+        String collectionName = collection != null && collection.isString() ? collection.asString().getValue() : "";
+        record(event.getCommandName(), collectionName, command.command, command.startNanos, durationNanos);
+    }
+
+    /**
+     * Records an executed operation.
+     *
+     * @param operation the operation name, e.g. the command name
+     * @param collectionName the collection name
+     * @param parameters the parameters, e.g. the command
+     * @param startNanos the start of the operation, from {@link System#nanoTime()}
+     * @param durationNanos the duration of the operation
+     */
+    public void record(String operation, String collectionName, BsonDocument parameters, long startNanos,
+                       long durationNanos) {
+
+        if (this.failure != null) {
+            return;
+        }
+
+        BsonDocument line = new BsonDocument();
+        line.put(OPERATION, new BsonString(operation));
+        line.put(COLLECTION, new BsonString(collectionName));
+        line.put(OFFSET, new BsonInt64(TimeUnit.NANOSECONDS.toMicros(startNanos - this.startNanos)));
+        line.put(DURATION, new BsonInt64(TimeUnit.NANOSECONDS.toMicros(durationNanos)));
+        line.put(THREAD, new BsonInt64(Thread.currentThread().getId()));
+        line.put(PARAMETERS, parameters == null ? new BsonDocument() : parameters);
+        String json = line.toJson();
+
+        synchronized (this.writer) {
+            try {
+                this.writer.write(json);
+                this.writer.write('\n');
+                this.recorded.increment();
+            }
+            catch (IOException e) {
+                this.failure = e;
+            }
+        }
+    }
+
+    /**
+     * Number of recorded operations.
+     */
+    public long getRecorded() {
+        return this.recorded.sum();
+    }
+
+    /**
+     * The I/O error that stopped recording, or null.
+     */
+    public Exception getFailure() {
+        return this.failure;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this.writer) {
+            this.writer.close();
+        }
+    }
+
+    private static class StartedCommand {
+
+        private final BsonDocument command;
+        private final long         startNanos;
+
+        StartedCommand(BsonDocument command, long startNanos) {
+            this.command = command;
+            this.startNanos = startNanos;
+        }
+    }
+
+}
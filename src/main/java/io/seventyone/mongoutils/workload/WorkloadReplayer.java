@@ -0,0 +1,259 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Copyright (C) 2015 SEVENTYONE.io - Benjamin Weidig <github+mongo-utils@seventyone.io>
+ */
+package io.seventyone.mongoutils.workload;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.mongodb.MongoInterruptedException;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+
+import io.seventyone.mongoutils.MongoService;
+
+/**
+ * Replays a workload recorded by {@link io.seventyone.mongoutils.workload.WorkloadRecorder} against a
+ * {@link io.seventyone.mongoutils.MongoService}, usually one connected to a local stand-in server.
+ * <p>
+ * Commands are started at their recorded offsets divided by the speed factor. Every recorded thread is mapped onto
+ * one of a fixed number of lanes, each executing its commands in order, so the concurrency of the workload is
+ * preserved up to the number of lanes. Finds and aggregations are executed through the collection and iterate their
+ * whole cursor, all other commands are run as recorded.
+ * <p>
+ * Latencies are measured from the time a command was due, not from the time it actually started, so commands queued
+ * behind slow ones aren't hidden from the report.
+ */
+public class WorkloadReplayer {
+
+    private final MongoService service;
+    private final int          threads;
+    private final double       speed;
+
+    /**
+     * Creates a replayer.
+     *
+     * @param service the service to replay against
+     * @param threads the number of lanes executing operations
+     * @param speed the speed factor, 1.0 replays at the recorded speed, 2.0 twice as fast
+     */
+    public WorkloadReplayer(MongoService service, int threads, double speed) {
+
+        if (threads < 1) {
+            String msg = String.format("Threads can't be '%d', must be positive", threads);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (speed <= 0.0) {
+            String msg = String.format("Speed can't be '%s', must be positive", speed);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.service = service;
+        this.threads = threads;
+        this.speed = speed;
+    }
+
+    /**
+     * Replays a recorded workload and waits until all operations are finished.
+     */
+    public ReplayReport replay(Path file) throws IOException {
+
+        List<Document> operations = read(file);
+        operations.sort(Comparator.comparingLong(o -> o.getLong(WorkloadRecorder.OFFSET)));
+
+        ReplayReport report = new ReplayReport();
+        ExecutorService[] lanes = new ExecutorService[this.threads];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor();
+        }
+        Map<Long, ExecutorService> threadLanes = Maps.newHashMap();
+
+        long start = System.nanoTime();
+        try {
+            for (Document operation : operations) {
+                long offset = TimeUnit.MICROSECONDS.toNanos(operation.getLong(WorkloadRecorder.OFFSET));
+                long due = start + (long) (offset / this.speed);
+                for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+
+                // Recorded threads are assigned to lanes round-robin in order of appearance
+                Number thread = (Number) operation.get(WorkloadRecorder.THREAD);
+                long threadId = thread == null ? 0L : thread.longValue();
+                ExecutorService lane = threadLanes.computeIfAbsent(threadId,
+                    t -> lanes[threadLanes.size() % lanes.length]);
+                lane.execute(() -> execute(operation, due, report));
+            }
+
+            for (ExecutorService lane : lanes) {
+                lane.shutdown();
+            }
+            for (ExecutorService lane : lanes) {
+                lane.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoInterruptedException("Interrupted while replaying workload", e);
+        }
+        finally {
+            for (ExecutorService lane : lanes) {
+                lane.shutdownNow();
+            }
+        }
+
+        report.finish(System.nanoTime() - start);
+
+        return report;
+    }
+
+    private void execute(Document operation, long due, ReplayReport report) {
+
+        String name = operation.getString(WorkloadRecorder.OPERATION);
+        String collectionName = operation.getString(WorkloadRecorder.COLLECTION);
+        Document command = (Document) operation.get(WorkloadRecorder.PARAMETERS);
+
+        try {
+            switch (name) {
+                case "find":
+                    // Servers before 3.2 don't know the find command, the cursor is iterated like the recorded one
+                    find(this.service.getCollection(collectionName), command);
+                    break;
+                case "aggregate":
+                    aggregate(this.service.getCollection(collectionName), command);
+                    break;
+                case "insert":
+                    this.service.runCommand(withoutGeneratedIds(command));
+                    break;
+                default:
+                    this.service.runCommand(command);
+                    break;
+            }
+        }
+        catch (RuntimeException e) {
+            report.recordError();
+        }
+        finally {
+            report.record(name, System.nanoTime() - due);
+        }
+    }
+
+    private static void find(MongoCollection<Document> collection, Document command) {
+
+        Document filter = (Document) command.get("filter");
+        FindIterable<Document> iterable = collection.find(filter == null ? new Document() : filter);
+        if (command.containsKey("projection")) {
+            iterable.projection((Document) command.get("projection"));
+        }
+        if (command.containsKey("sort")) {
+            iterable.sort((Document) command.get("sort"));
+        }
+        if (command.containsKey("skip")) {
+            iterable.skip(((Number) command.get("skip")).intValue());
+        }
+        if (command.containsKey("limit")) {
+            iterable.limit(((Number) command.get("limit")).intValue());
+        }
+        if (command.containsKey("batchSize")) {
+            iterable.batchSize(((Number) command.get("batchSize")).intValue());
+        }
+
+        try (MongoCursor<Document> cursor = iterable.iterator()) {
+            while (cursor.hasNext()) {
+                cursor.next();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void aggregate(MongoCollection<Document> collection, Document command) {
+
+        List<Document> pipeline = (List<Document>) command.get("pipeline");
+        AggregateIterable<Document> iterable = collection.aggregate(pipeline);
+        if (command.containsKey("allowDiskUse")) {
+            iterable.allowDiskUse(command.getBoolean("allowDiskUse"));
+        }
+        Document cursorOptions = (Document) command.get("cursor");
+        if (cursorOptions != null && cursorOptions.containsKey("batchSize")) {
+            iterable.batchSize(((Number) cursorOptions.get("batchSize")).intValue());
+        }
+
+        try (MongoCursor<Document> cursor = iterable.iterator()) {
+            while (cursor.hasNext()) {
+                cursor.next();
+            }
+        }
+    }
+
+    /**
+     * Removes the ObjectId _ids of inserted documents, so replaying twice or against a seeded server doesn't fail with
+     * duplicate keys. They were usually generated by the driver anyway.
+     */
+    @SuppressWarnings("unchecked")
+    private static Document withoutGeneratedIds(Document command) {
+
+        List<Document> documents = (List<Document>) command.get("documents");
+        if (documents != null) {
+            for (Document document : documents) {
+                if (document.get("_id") instanceof ObjectId) {
+                    document.remove("_id");
+                }
+            }
+        }
+
+        return command;
+    }
+
+    private static List<Document> read(Path file) throws IOException {
+
+        List<Document> operations = Lists.newArrayList();
+
+        GZIPInputStream input = new GZIPInputStream(Files.newInputStream(file));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() == false) {
+                    operations.add(Document.parse(line));
+                }
+            }
+        }
+
+        return operations;
+    }
+
+}